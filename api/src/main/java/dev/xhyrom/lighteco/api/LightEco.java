@@ -2,6 +2,8 @@ package dev.xhyrom.lighteco.api;
 
 import dev.xhyrom.lighteco.api.manager.CommandManager;
 import dev.xhyrom.lighteco.api.manager.CurrencyManager;
+import dev.xhyrom.lighteco.api.manager.LeaderboardManager;
+import dev.xhyrom.lighteco.api.manager.LedgerManager;
 import dev.xhyrom.lighteco.api.manager.UserManager;
 import dev.xhyrom.lighteco.api.platform.Platform;
 import dev.xhyrom.lighteco.api.platform.PlayerAdapter;
@@ -30,6 +32,20 @@ public interface LightEco {
      */
     @NonNull CurrencyManager getCurrencyManager();
 
+    /**
+     * Gets the {@link LeaderboardManager}, which ranks users by their balances.
+     *
+     * @return the leaderboard manager
+     */
+    @NonNull LeaderboardManager getLeaderboardManager();
+
+    /**
+     * Gets the {@link LedgerManager}, which keeps the history of balance changes.
+     *
+     * @return the ledger manager
+     */
+    @NonNull LedgerManager getLedgerManager();
+
     /**
      * Gets the {@link CommandManager}, which manages the commands.
      *
@@ -0,0 +1,54 @@
+package dev.xhyrom.lighteco.api.manager;
+
+import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.leaderboard.LeaderboardEntry;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface LeaderboardManager {
+    /**
+     * Whether the leaderboard of the currency has been loaded from storage.
+     * <p>
+     *     Until then, ranks and pages only contain users loaded in the meantime.
+     * </p>
+     *
+     * @param currency the currency
+     * @return true if the leaderboard is ready
+     */
+    boolean isReady(@NonNull Currency currency);
+
+    /**
+     * Gets the rank of a user, highest balance first.
+     * <p>
+     *     Served from memory, safe to call from the main thread.
+     * </p>
+     *
+     * @param currency the currency
+     * @param uniqueId the unique id of the user
+     * @return the rank starting at 1, or 0 if the user is not on the leaderboard
+     */
+    int getRank(@NonNull Currency currency, @NonNull UUID uniqueId);
+
+    /**
+     * Gets a page of the leaderboard, highest balance first.
+     * <p>
+     *     Served from memory, safe to call from the main thread.
+     * </p>
+     *
+     * @param currency the currency
+     * @param page the page, starting at 1
+     * @param pageSize the number of entries per page
+     * @return the entries, empty if the page is out of range
+     */
+    @NonNull List<LeaderboardEntry> getPage(@NonNull Currency currency, int page, int pageSize);
+
+    /**
+     * Gets the number of users on the leaderboard.
+     *
+     * @param currency the currency
+     * @return the number of users
+     */
+    int getSize(@NonNull Currency currency);
+}
@@ -0,0 +1,34 @@
+package dev.xhyrom.lighteco.api.manager;
+
+import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public interface LedgerManager {
+    /**
+     * Whether balance changes are being recorded.
+     *
+     * @return true if the ledger is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Gets a page of the balance history of a user, newest first.
+     * <p>
+     *     Read from storage. Changes are written in batches,
+     *     so the latest ones may show up only after a moment.
+     * </p>
+     *
+     * @param uniqueId the unique id of the user
+     * @param currency the currency, or null for all currencies
+     * @param page the page, starting at 1
+     * @param pageSize the number of entries per page
+     * @return the entries, empty if the page is out of range
+     */
+    @NonNull CompletableFuture<List<LedgerEntry>> getHistory(@NonNull UUID uniqueId, @Nullable Currency currency, int page, int pageSize);
+}
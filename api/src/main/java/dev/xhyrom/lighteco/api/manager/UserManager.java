@@ -1,9 +1,12 @@
 package dev.xhyrom.lighteco.api.manager;
 
+import dev.xhyrom.lighteco.api.model.currency.Currency;
 import dev.xhyrom.lighteco.api.model.user.User;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -11,6 +14,19 @@ public interface UserManager {
     @NonNull CompletableFuture<User> loadUser(@NonNull UUID uniqueId);
     @NonNull CompletableFuture<User> loadUser(@NonNull UUID uniqueId, String username);
 
+    /**
+     * Loads multiple users at once.
+     * <p>
+     *     Users that are already loaded are returned as they are,
+     *     the rest is fetched from storage in bulk.
+     *     Prefer this over calling {@link #loadUser(UUID)} in a loop.
+     * </p>
+     *
+     * @param uniqueIds the unique ids of the users to load
+     * @return a future that completes with the loaded users
+     */
+    @NonNull CompletableFuture<Collection<User>> loadUsers(@NonNull Collection<UUID> uniqueIds);
+
     @NonNull CompletableFuture<Void> saveUser(@NonNull User user);
 
     /**
@@ -27,7 +43,56 @@ public interface UserManager {
      */
     @NonNull CompletableFuture<Void> saveUsers(@NonNull User... users);
 
+    /**
+     * Gets a loaded user.
+     * <p>
+     *     Never touches storage, so it is safe to call from the main thread.
+     * </p>
+     *
+     * @param uniqueId the unique id of the user
+     * @return the user, or null if the user is not loaded (yet)
+     */
     @Nullable User getUser(@NonNull UUID uniqueId);
 
     boolean isLoaded(@NonNull UUID uniqueId);
+
+    /**
+     * Gets the unique id of a loaded user by their username, case-insensitive.
+     * <p>
+     *     Never touches storage or the platform, so it is safe to call from the main thread.
+     * </p>
+     *
+     * @param username the username
+     * @return the unique id, or null if no loaded user has this username
+     */
+    @Nullable UUID getUniqueId(@NonNull String username);
+
+    /**
+     * Looks up the unique id of a user by their username, case-insensitive.
+     * <p>
+     *     Loaded users are resolved immediately, otherwise the last known username in storage is used.
+     * </p>
+     *
+     * @param username the username
+     * @return a future that completes with the unique id, or null if the username is unknown
+     */
+    @NonNull CompletableFuture<@Nullable UUID> lookupUniqueId(@NonNull String username);
+
+    /**
+     * Moves money from one user to another, only if the sender has enough.
+     * <p>
+     *     The whole amount is taken from the sender and the receiver gets the amount minus tax,
+     *     the tax is removed from the economy. Both users are marked for saving.
+     * </p>
+     *
+     * @param from the sender
+     * @param to the receiver
+     * @param currency the currency
+     * @param amount the amount taken from the sender
+     * @param tax the part of the amount the receiver doesn't get, use {@link BigDecimal#ZERO} for none
+     * @return true if the money was moved, false if the sender doesn't have enough
+     * @throws IllegalArgumentException if the users are the same, the amount is negative or the tax is not between zero and the amount
+     * @throws IllegalStateException if another operation on one of the users takes too long
+     */
+    boolean transfer(@NonNull User from, @NonNull User to, @NonNull Currency currency, @NonNull BigDecimal amount, @NonNull BigDecimal tax) throws IllegalArgumentException, IllegalStateException;
 }
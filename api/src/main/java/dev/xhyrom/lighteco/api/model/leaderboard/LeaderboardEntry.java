@@ -0,0 +1,17 @@
+package dev.xhyrom.lighteco.api.model.leaderboard;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * A single position on a leaderboard.
+ *
+ * @param rank the rank, starting at 1
+ * @param uniqueId the unique id of the user
+ * @param username the last known username of the user, if any
+ * @param balance the balance of the user
+ */
+public record LeaderboardEntry(int rank, @NonNull UUID uniqueId, @Nullable String username, @NonNull BigDecimal balance) {}
@@ -0,0 +1,51 @@
+package dev.xhyrom.lighteco.api.model.ledger;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A single balance change of a user.
+ *
+ * @param id the id assigned by storage, increasing in the order entries were stored, 0 if not stored yet
+ * @param time when the change happened
+ * @param uniqueId the unique id of the user whose balance changed
+ * @param currency the identifier of the currency
+ * @param type the kind of change
+ * @param amount the amount moved, for {@link Type#SET} the difference to the previous balance (negative if it was lowered)
+ * @param balance the balance of the user right after the change
+ * @param other the other user involved: the counterparty of a payment, or whoever issued the change (e.g. a command sender), if any
+ * @param source what made the change (e.g. {@code command} or {@code api}), if known
+ */
+public record LedgerEntry(
+        long id,
+        @NonNull Instant time,
+        @NonNull UUID uniqueId,
+        @NonNull String currency,
+        @NonNull Type type,
+        @NonNull BigDecimal amount,
+        @NonNull BigDecimal balance,
+        @Nullable UUID other,
+        @Nullable String source
+) {
+    public enum Type {
+        DEPOSIT,
+        WITHDRAW,
+        SET,
+        /**
+         * Money sent to {@link LedgerEntry#other()}, without the tax.
+         */
+        PAY,
+        /**
+         * Money received from {@link LedgerEntry#other()}.
+         */
+        RECEIVE,
+        /**
+         * Tax taken from the sender of a payment, recorded next to its {@link #PAY} entry.
+         */
+        TAX
+    }
+}
@@ -39,6 +39,7 @@ public interface User {
      *
      * @param currency the currency
      * @param balance the balance
+     * @throws IllegalStateException if another operation on this user takes too long
      */
     void setBalance(@NonNull Currency currency, @NonNull BigDecimal balance);
 
@@ -48,8 +49,9 @@ public interface User {
      * @param currency the currency
      * @param amount the amount
      * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalStateException if another operation on this user takes too long
      */
-    void deposit(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException;
+    void deposit(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException, IllegalStateException;
 
     /**
      * Subtract the specified amount from the balance of this user for the specified currency.
@@ -57,6 +59,51 @@ public interface User {
      * @param currency the currency
      * @param amount the amount
      * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalStateException if another operation on this user takes too long
      */
-    void withdraw(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException;
+    void withdraw(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Subtract the specified amount from the balance of this user for the specified currency,
+     * only if the balance is high enough.
+     * <p>
+     *     The check and the update are atomic, unlike {@link #withdraw(Currency, BigDecimal)},
+     *     which takes everything if the balance is lower.
+     * </p>
+     *
+     * @param currency the currency
+     * @param amount the amount
+     * @return true if the amount was withdrawn, false if the balance is too low
+     * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalStateException if another operation on this user takes too long
+     */
+    boolean tryWithdraw(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Set the balance of this user for the specified currency, only if it's currently the expected one.
+     * <p>
+     *     The check and the update are atomic, use this for read-modify-write changes
+     *     that can't be expressed as a deposit or withdrawal.
+     * </p>
+     *
+     * @param currency the currency
+     * @param expected the expected current balance
+     * @param balance the new balance
+     * @return true if the balance was set, false if it was different from the expected one
+     * @throws IllegalArgumentException if the new balance is negative
+     * @throws IllegalStateException if another operation on this user takes too long
+     */
+    boolean compareAndSetBalance(@NonNull Currency currency, @NonNull BigDecimal expected, @NonNull BigDecimal balance) throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Move the specified amount from this user to the target user, only if this user has enough.
+     *
+     * @param currency the currency
+     * @param target the user receiving the amount
+     * @param amount the amount
+     * @return true if the amount was moved, false if this user doesn't have enough
+     * @throws IllegalArgumentException if the amount is negative or the target balance would overflow
+     * @throws IllegalStateException if another operation on one of the users takes too long
+     */
+    boolean transfer(@NonNull Currency currency, @NonNull User target, @NonNull BigDecimal amount) throws IllegalArgumentException, IllegalStateException;
 }
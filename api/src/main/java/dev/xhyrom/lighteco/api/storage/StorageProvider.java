@@ -1,10 +1,17 @@
 package dev.xhyrom.lighteco.api.storage;
 
 import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
 import dev.xhyrom.lighteco.api.model.user.User;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 public interface StorageProvider {
@@ -24,6 +31,93 @@ public interface StorageProvider {
 
     default void registerCurrency(@NonNull Currency currency) throws Exception {}
     @NonNull User loadUser(@NonNull UUID uniqueId, @Nullable String username) throws Exception;
+
+    /**
+     * Load multiple users at once.
+     * <p>
+     *     Implementations should fetch all users in as few queries as possible.
+     *     The default implementation loads them one by one.
+     * </p>
+     *
+     * @param uniqueIds the unique ids of the users
+     * @return the loaded users
+     * @throws Exception
+     */
+    default @NonNull Collection<User> loadUsers(@NonNull Collection<UUID> uniqueIds) throws Exception {
+        List<User> users = new ArrayList<>(uniqueIds.size());
+        for (UUID uniqueId : uniqueIds) {
+            users.add(loadUser(uniqueId, null));
+        }
+
+        return users;
+    }
+
+    /**
+     * Look up the unique id of a user by their last known username.
+     *
+     * @param username the username, case-insensitive
+     * @return the unique id, or null if unknown (or not supported by this provider)
+     * @throws Exception
+     */
+    default @Nullable UUID lookupUniqueId(@NonNull String username) throws Exception {
+        return null;
+    }
+
     void saveUser(@NonNull User user) throws Exception;
     void saveUsers(@NonNull User... users) throws Exception;
+
+    /**
+     * Stream all stored balances of a currency, used to seed leaderboards.
+     * <p>
+     *     Implementations should not hold all rows in memory at once.
+     *     The default implementation provides nothing.
+     * </p>
+     *
+     * @param currency the currency
+     * @param consumer receives every stored balance
+     * @throws Exception
+     */
+    default void loadBalances(@NonNull Currency currency, @NonNull BalanceConsumer consumer) throws Exception {}
+
+    /**
+     * Append entries to the ledger, in the given order.
+     * <p>
+     *     Called with batches of entries from a single thread.
+     *     The default implementation doesn't keep them.
+     * </p>
+     *
+     * @param entries the entries, their ids are ignored
+     * @throws Exception
+     */
+    default void saveLedgerEntries(@NonNull List<LedgerEntry> entries) throws Exception {}
+
+    /**
+     * Load ledger entries of a user, newest first.
+     *
+     * @param uniqueId the unique id of the user
+     * @param currency the currency identifier, or null for all currencies
+     * @param before only entries with a lower id, the id of the last entry of the previous page or {@link Long#MAX_VALUE}
+     * @param limit the maximum number of entries
+     * @return the entries
+     * @throws Exception
+     */
+    default @NonNull List<LedgerEntry> loadLedgerEntries(@NonNull UUID uniqueId, @Nullable String currency, long before, int limit) throws Exception {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Delete ledger entries older than the given time.
+     *
+     * @param before the time
+     * @return the number of deleted entries
+     * @throws Exception
+     */
+    default long deleteLedgerEntries(@NonNull Instant before) throws Exception {
+        return 0;
+    }
+
+    @FunctionalInterface
+    interface BalanceConsumer {
+        void accept(@NonNull UUID uniqueId, @Nullable String username, @NonNull BigDecimal balance);
+    }
 }
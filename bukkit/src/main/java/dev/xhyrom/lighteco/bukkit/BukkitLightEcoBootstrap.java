@@ -54,6 +54,11 @@ public class BukkitLightEcoBootstrap implements LightEcoBootstrap, LoaderBootstr
         this.plugin.disable();
     }
 
+    @Override
+    public boolean isPrimaryThread() {
+        return this.loader.getServer().isPrimaryThread();
+    }
+
     @Override
     public Path getDataDirectory() {
         return this.loader.getDataFolder().toPath();
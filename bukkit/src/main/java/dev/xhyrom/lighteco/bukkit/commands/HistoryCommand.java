@@ -0,0 +1,56 @@
+package dev.xhyrom.lighteco.bukkit.commands;
+
+import dev.jorel.commandapi.CommandAPICommand;
+import dev.jorel.commandapi.arguments.IntegerArgument;
+import dev.jorel.commandapi.arguments.OfflinePlayerArgument;
+import dev.jorel.commandapi.executors.CommandArguments;
+import dev.xhyrom.lighteco.bukkit.chat.BukkitCommandSender;
+import dev.xhyrom.lighteco.bukkit.manager.BukkitCommandManager;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import lombok.RequiredArgsConstructor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+@RequiredArgsConstructor
+public class HistoryCommand implements Command {
+    private final BukkitCommandManager manager;
+    private final Currency currency;
+    private final String permissionBase;
+
+    @Override
+    public CommandAPICommand[] multipleBuild() {
+        return new CommandAPICommand[]{
+                new CommandAPICommand("history")
+                        .withPermission(permissionBase + "history.others")
+                        .withArguments(new OfflinePlayerArgument("target"))
+                        .withOptionalArguments(new IntegerArgument("page", 1))
+                        .executes((sender, args) -> {
+                            this.handleHistory(sender, args, currency);
+                        }),
+                new CommandAPICommand("history")
+                        .withPermission(permissionBase + "history")
+                        .withOptionalArguments(new IntegerArgument("page", 1))
+                        .executesPlayer((sender, args) -> {
+                            this.handleHistory(sender, args, currency);
+                        })
+        };
+    }
+
+    private void handleHistory(CommandSender originalSender, CommandArguments args, Currency currency) {
+        BukkitCommandSender sender = new BukkitCommandSender(originalSender, this.manager.audienceFactory);
+        OfflinePlayer target = (OfflinePlayer) args.get("target");
+        Integer page = (Integer) args.get("page");
+
+        // history is read from storage, the target doesn't have to be loaded
+        if (target == null) {
+            Player player = (Player) originalSender;
+            this.manager.onHistory(sender, currency, player.getUniqueId(), player.getName(), page != null ? page : 1);
+
+            return;
+        }
+
+        String name = target.getName() != null ? target.getName() : args.getRaw("target");
+        this.manager.onHistory(sender, currency, target.getUniqueId(), name, page != null ? page : 1);
+    }
+}
@@ -40,8 +40,6 @@ public class PayCommand implements Command {
         OfflinePlayer target = (OfflinePlayer) args.get("target");
         BigDecimal amount = BigDecimal.valueOf(Double.parseDouble(args.getRaw("amount")));
 
-        if (!this.manager.canUse(sender, currency)) return;
-
         this.manager.plugin.getUserManager().loadUser(target.getUniqueId())
                 .thenAccept(result -> {
                     String username = result.getUsername() == null ?
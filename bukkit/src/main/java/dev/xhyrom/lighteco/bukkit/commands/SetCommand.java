@@ -41,8 +41,6 @@ public class SetCommand implements Command {
         OfflinePlayer target = (OfflinePlayer) args.get("target");
         BigDecimal amount = BigDecimal.valueOf(Double.parseDouble(args.getRaw("amount")));
 
-        if (!this.manager.canUse(sender, currency)) return;
-
         this.manager.plugin.getUserManager().loadUser(target.getUniqueId())
                 .thenAccept(result -> {
                     String name = target.getName() != null ? target.getName() : args.getRaw("target");
@@ -0,0 +1,34 @@
+package dev.xhyrom.lighteco.bukkit.commands;
+
+import dev.jorel.commandapi.CommandAPICommand;
+import dev.jorel.commandapi.arguments.IntegerArgument;
+import dev.jorel.commandapi.executors.CommandArguments;
+import dev.xhyrom.lighteco.bukkit.chat.BukkitCommandSender;
+import dev.xhyrom.lighteco.bukkit.manager.BukkitCommandManager;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import lombok.RequiredArgsConstructor;
+import org.bukkit.command.CommandSender;
+
+@RequiredArgsConstructor
+public class TopCommand implements Command {
+    private final BukkitCommandManager manager;
+    private final Currency currency;
+    private final String permissionBase;
+
+    @Override
+    public CommandAPICommand build() {
+        return new CommandAPICommand("top")
+                .withPermission(permissionBase + "top")
+                .withOptionalArguments(new IntegerArgument("page", 1))
+                .executes((sender, args) -> {
+                    this.handleTop(sender, args, currency);
+                });
+    }
+
+    private void handleTop(CommandSender originalSender, CommandArguments args, Currency currency) {
+        BukkitCommandSender sender = new BukkitCommandSender(originalSender, this.manager.audienceFactory);
+        Integer page = (Integer) args.get("page");
+
+        this.manager.onTop(sender, currency, page != null ? page : 1);
+    }
+}
@@ -2,17 +2,25 @@ package dev.xhyrom.lighteco.bukkit.hooks;
 
 import dev.xhyrom.lighteco.bukkit.BukkitLightEcoPlugin;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.leaderboard.Leaderboard;
 import dev.xhyrom.lighteco.common.model.user.User;
 import lombok.RequiredArgsConstructor;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
 @RequiredArgsConstructor
 public class PlaceholderAPIExpansion extends PlaceholderExpansion {
+    private static final int MAX_PARSED = 1024;
+    private static final Placeholder INVALID = new Placeholder(null, null);
+
     private final BukkitLightEcoPlugin plugin;
+    private final Map<String, Placeholder> parsed = new ConcurrentHashMap<>();
 
     @Override
     public @NotNull String getIdentifier() {
@@ -31,26 +39,100 @@ public class PlaceholderAPIExpansion extends PlaceholderExpansion {
 
     @Override
     public @Nullable String onRequest(OfflinePlayer player, @NotNull String params) {
-        String[] args = params.split("_");
-        if (args.length < 2) return null;
+        if (player == null) return null;
 
-        String currencyIdentifier = args[0];
-        String type = args[1];
+        Placeholder placeholder = parse(params);
+        if (placeholder == INVALID) return null;
 
-        Currency currency = this.plugin.getCurrencyManager().getIfLoaded(currencyIdentifier);
+        Currency currency = this.plugin.getCurrencyManager().getIfLoaded(placeholder.currency());
         if (currency == null) return null;
 
-        User user = this.plugin.getUserManager().loadUser(player.getUniqueId()).join();
+        if (placeholder.type() == Type.RANK) {
+            return getRank(currency, player.getUniqueId());
+        }
 
-        switch (type.toLowerCase()) {
-            case "balance" -> {
-                return user.getBalance(currency).toPlainString();
-            }
-            case "balance_formatted" -> {
-                return currency.format(user.getBalance(currency));
+        // never wait for the database here, this is usually called from the main thread
+        User user = getUser(player.getUniqueId());
+        if (user == null) {
+            return this.plugin.getConfig().placeholders.loading;
+        }
+
+        return switch (placeholder.type()) {
+            case BALANCE -> user.getBalance(currency).toPlainString();
+            case BALANCE_FORMATTED -> currency.format(user.getBalance(currency));
+            default -> null;
+        };
+    }
+
+    // the leaderboard has every player, no need to load the user
+    private @Nullable String getRank(Currency currency, UUID uniqueId) {
+        Leaderboard leaderboard = this.plugin.getLeaderboardManager().getLeaderboard(currency);
+        if (leaderboard == null) return null;
+
+        if (!leaderboard.isReady()) {
+            return this.plugin.getConfig().placeholders.loading;
+        }
+
+        int rank = leaderboard.getRank(uniqueId);
+        return rank > 0 ? String.valueOf(rank) : this.plugin.getConfig().placeholders.unranked;
+    }
+
+    private @Nullable User getUser(UUID uniqueId) {
+        if (!this.plugin.getStorage().isLoading(uniqueId)) {
+            User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+
+            if (user != null) {
+                this.plugin.getUserManager().getHousekeeper().registerUsage(uniqueId);
+                return user;
             }
         }
 
+        this.plugin.getUserManager().loadUser(uniqueId)
+                .exceptionally(throwable -> {
+                    this.plugin.getBootstrap().getLogger().warn("Failed to load user %s for placeholder", throwable, uniqueId);
+                    return null;
+                });
+
         return null;
     }
+
+    // format: <currency>_<type>, type may contain underscores
+    private Placeholder parse(String params) {
+        Placeholder placeholder = this.parsed.get(params);
+        if (placeholder != null) return placeholder;
+
+        placeholder = INVALID;
+
+        int separator = params.indexOf('_');
+        if (separator > 0) {
+            Type type = Type.of(params.substring(separator + 1));
+
+            if (type != null) {
+                placeholder = new Placeholder(params.substring(0, separator), type);
+            }
+        }
+
+        // params come from other plugins' configs, don't let a misbehaving one grow this forever
+        if (this.parsed.size() < MAX_PARSED) {
+            this.parsed.put(params, placeholder);
+        }
+
+        return placeholder;
+    }
+
+    private record Placeholder(String currency, Type type) {}
+
+    private enum Type {
+        BALANCE,
+        BALANCE_FORMATTED,
+        RANK;
+
+        private static @Nullable Type of(String name) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(name)) return type;
+            }
+
+            return null;
+        }
+    }
 }
@@ -41,6 +41,12 @@ public class BukkitCommandManager extends AbstractCommandManager {
         if (currency.isPayable())
             cmd = cmd.withSubcommand(new PayCommand(this, currency, permissionBase).build());
 
+        if (this.plugin.getConfig().leaderboard.enabled)
+            cmd = cmd.withSubcommand(new TopCommand(this, currency, permissionBase).build());
+
+        if (this.plugin.getLedgerManager().isEnabled())
+            cmd = cmd.withSubcommands(new HistoryCommand(this, currency, permissionBase).multipleBuild());
+
         cmd.register();
     }
 
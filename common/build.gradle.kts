@@ -25,4 +25,12 @@ dependencies {
 
     compileOnly("org.checkerframework:checker-qual:3.8.0")
     compileOnly("org.jetbrains:annotations:20.1.0")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
+    testImplementation("org.mockito:mockito-core:5.5.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.0")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
\ No newline at end of file
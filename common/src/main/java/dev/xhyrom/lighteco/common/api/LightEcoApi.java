@@ -3,6 +3,8 @@ package dev.xhyrom.lighteco.common.api;
 import dev.xhyrom.lighteco.api.LightEco;
 import dev.xhyrom.lighteco.api.manager.CommandManager;
 import dev.xhyrom.lighteco.api.manager.CurrencyManager;
+import dev.xhyrom.lighteco.api.manager.LeaderboardManager;
+import dev.xhyrom.lighteco.api.manager.LedgerManager;
 import dev.xhyrom.lighteco.api.manager.UserManager;
 import dev.xhyrom.lighteco.api.platform.Platform;
 import dev.xhyrom.lighteco.api.platform.PlayerAdapter;
@@ -17,6 +19,8 @@ public class LightEcoApi implements LightEco {
     private final UserManager userManager;
     private final CurrencyManager currencyManager;
     private final CommandManager commandManager;
+    private final LeaderboardManager leaderboardManager;
+    private final LedgerManager ledgerManager;
     private final PlayerAdapter<?> playerAdapter;
 
     public LightEcoApi(LightEcoPlugin plugin) {
@@ -26,6 +30,8 @@ public class LightEcoApi implements LightEco {
         this.userManager = new ApiUserManager(plugin, plugin.getUserManager());
         this.currencyManager = new ApiCurrencyManager(plugin, plugin.getCurrencyManager());
         this.commandManager = new ApiCommandManager(plugin, plugin.getCommandManager());
+        this.leaderboardManager = new ApiLeaderboardManager(plugin, plugin.getLeaderboardManager());
+        this.ledgerManager = new ApiLedgerManager(plugin, plugin.getLedgerManager());
         this.playerAdapter = new ApiPlayerAdapter<>(userManager, plugin.getContextManager());
     }
 
@@ -49,6 +55,16 @@ public class LightEcoApi implements LightEco {
         return this.commandManager;
     }
 
+    @Override
+    public @NonNull LeaderboardManager getLeaderboardManager() {
+        return this.leaderboardManager;
+    }
+
+    @Override
+    public @NonNull LedgerManager getLedgerManager() {
+        return this.ledgerManager;
+    }
+
     @Override
     public @NonNull <T> PlayerAdapter<T> getPlayerAdapter(@NonNull Class<T> playerClass) {
         Class<?> expected = this.plugin.getContextManager().getPlayerClass();
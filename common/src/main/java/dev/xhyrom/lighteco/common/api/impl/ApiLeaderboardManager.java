@@ -0,0 +1,50 @@
+package dev.xhyrom.lighteco.common.api.impl;
+
+import dev.xhyrom.lighteco.api.manager.LeaderboardManager;
+import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.leaderboard.LeaderboardEntry;
+import dev.xhyrom.lighteco.common.model.leaderboard.Leaderboard;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class ApiLeaderboardManager extends ApiAbstractManager<dev.xhyrom.lighteco.common.manager.leaderboard.LeaderboardManager> implements LeaderboardManager {
+    public ApiLeaderboardManager(LightEcoPlugin plugin, dev.xhyrom.lighteco.common.manager.leaderboard.LeaderboardManager handler) {
+        super(plugin, handler);
+    }
+
+    private Leaderboard get(Currency currency) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.plugin.getCurrencyManager()
+                .getIfLoaded(currency.getIdentifier());
+        if (internal == null) return null;
+
+        return this.handler.getLeaderboard(internal);
+    }
+
+    @Override
+    public boolean isReady(@NonNull Currency currency) {
+        Leaderboard leaderboard = get(currency);
+        return leaderboard != null && leaderboard.isReady();
+    }
+
+    @Override
+    public int getRank(@NonNull Currency currency, @NonNull UUID uniqueId) {
+        Leaderboard leaderboard = get(currency);
+        return leaderboard != null ? leaderboard.getRank(uniqueId) : 0;
+    }
+
+    @Override
+    public @NonNull List<LeaderboardEntry> getPage(@NonNull Currency currency, int page, int pageSize) {
+        Leaderboard leaderboard = get(currency);
+        return leaderboard != null ? leaderboard.getPage(page, pageSize) : Collections.emptyList();
+    }
+
+    @Override
+    public int getSize(@NonNull Currency currency) {
+        Leaderboard leaderboard = get(currency);
+        return leaderboard != null ? leaderboard.size() : 0;
+    }
+}
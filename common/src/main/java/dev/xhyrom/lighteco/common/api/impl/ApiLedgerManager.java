@@ -0,0 +1,36 @@
+package dev.xhyrom.lighteco.common.api.impl;
+
+import dev.xhyrom.lighteco.api.manager.LedgerManager;
+import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class ApiLedgerManager extends ApiAbstractManager<dev.xhyrom.lighteco.common.manager.ledger.LedgerManager> implements LedgerManager {
+    public ApiLedgerManager(LightEcoPlugin plugin, dev.xhyrom.lighteco.common.manager.ledger.LedgerManager handler) {
+        super(plugin, handler);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.handler.isEnabled();
+    }
+
+    @Override
+    public @NonNull CompletableFuture<List<LedgerEntry>> getHistory(@NonNull UUID uniqueId, @Nullable Currency currency, int page, int pageSize) {
+        if (currency == null)
+            return this.handler.getHistory(uniqueId, null, page, pageSize);
+
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.plugin.getCurrencyManager()
+                .getIfLoaded(currency.getIdentifier());
+        if (internal == null)
+            return CompletableFuture.completedFuture(List.of());
+
+        return this.handler.getHistory(uniqueId, internal, page, pageSize);
+    }
+}
@@ -1,7 +1,10 @@
 package dev.xhyrom.lighteco.common.api.impl;
 
+import com.google.common.base.Preconditions;
 import dev.xhyrom.lighteco.api.model.currency.Currency;
 import dev.xhyrom.lighteco.api.model.user.User;
+import dev.xhyrom.lighteco.common.manager.ledger.LedgerManager;
+import dev.xhyrom.lighteco.common.manager.user.UserLocks;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -9,8 +12,18 @@ import java.math.BigDecimal;
 import java.util.UUID;
 
 public class ApiUser implements User {
+    // ledger source of changes made through the api, e.g. by Vault
+    private static final String LEDGER_SOURCE = "api";
+
+    public static dev.xhyrom.lighteco.common.model.user.User cast(User user) {
+        Preconditions.checkArgument(user instanceof ApiUser, "Illegal instance " + user.getClass() + " cannot be handled by this implementation");
+        return ((ApiUser) user).handler;
+    }
+
     private final dev.xhyrom.lighteco.common.model.user.User handler;
 
+    private volatile dev.xhyrom.lighteco.common.model.currency.Currency lastCurrency;
+
     public ApiUser(dev.xhyrom.lighteco.common.model.user.User handler) {
         this.handler = handler;
     }
@@ -27,37 +40,83 @@ public class ApiUser implements User {
 
     @Override
     public @NonNull BigDecimal getBalance(@NonNull Currency currency) {
-        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.handler.getPlugin()
-                .getCurrencyManager()
-                .getIfLoaded(currency.getIdentifier());
-
-        return this.handler.getBalance(internal);
+        return this.handler.getBalance(this.internal(currency));
     }
 
     @Override
     public void setBalance(@NonNull Currency currency, @NonNull BigDecimal balance) {
-        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.handler.getPlugin()
-                .getCurrencyManager()
-                .getIfLoaded(currency.getIdentifier());
-
-        this.handler.setBalance(internal, balance);
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+        try (LedgerManager.Scope scope = this.scope(); UserLocks.Hold hold = this.lock()) {
+            this.handler.setBalance(internal, balance);
+        }
     }
 
     @Override
     public void deposit(@NonNull Currency currency, @NonNull BigDecimal amount) {
-        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.handler.getPlugin()
-                .getCurrencyManager()
-                .getIfLoaded(currency.getIdentifier());
-
-        this.handler.deposit(internal, amount);
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+        try (LedgerManager.Scope scope = this.scope(); UserLocks.Hold hold = this.lock()) {
+            this.handler.deposit(internal, amount);
+        }
     }
 
     @Override
     public void withdraw(@NonNull Currency currency, @NonNull BigDecimal amount) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+        try (LedgerManager.Scope scope = this.scope(); UserLocks.Hold hold = this.lock()) {
+            this.handler.withdraw(internal, amount);
+        }
+    }
+
+    @Override
+    public boolean tryWithdraw(@NonNull Currency currency, @NonNull BigDecimal amount) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+        try (LedgerManager.Scope scope = this.scope(); UserLocks.Hold hold = this.lock()) {
+            return this.handler.tryWithdraw(internal, amount);
+        }
+    }
+
+    @Override
+    public boolean compareAndSetBalance(@NonNull Currency currency, @NonNull BigDecimal expected, @NonNull BigDecimal balance) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+        try (LedgerManager.Scope scope = this.scope(); UserLocks.Hold hold = this.lock()) {
+            return this.handler.compareAndSetBalance(internal, expected, balance);
+        }
+    }
+
+    @Override
+    public boolean transfer(@NonNull Currency currency, @NonNull User target, @NonNull BigDecimal amount) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.internal(currency);
+
+        try (LedgerManager.Scope scope = this.scope()) {
+            return this.handler.getPlugin().getUserManager().transfer(this.handler, cast(target), internal, amount, BigDecimal.ZERO);
+        }
+    }
+
+    // scope before the lock, so it's closed after the lock is released
+    private LedgerManager.Scope scope() {
+        return this.handler.getPlugin().getLedgerManager().scope(null, LEDGER_SOURCE);
+    }
+
+    private UserLocks.Hold lock() {
+        return this.handler.getPlugin().getUserManager().getLocks().lock(this.handler.getUniqueId());
+    }
+
+    /**
+     * Resolves the internal currency, callers almost always pass the same currency instance,
+     * so the last one is remembered instead of looking it up by identifier every time.
+     */
+    private dev.xhyrom.lighteco.common.model.currency.Currency internal(Currency currency) {
+        dev.xhyrom.lighteco.common.model.currency.Currency last = this.lastCurrency;
+        if (last != null && last.getProxy() == currency) {
+            return last;
+        }
+
         dev.xhyrom.lighteco.common.model.currency.Currency internal = this.handler.getPlugin()
                 .getCurrencyManager()
                 .getIfLoaded(currency.getIdentifier());
+        Preconditions.checkArgument(internal != null, "Currency " + currency.getIdentifier() + " is not registered");
 
-        this.handler.withdraw(internal, amount);
+        this.lastCurrency = internal;
+        return internal;
     }
 }
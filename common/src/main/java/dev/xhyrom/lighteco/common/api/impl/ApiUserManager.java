@@ -1,12 +1,16 @@
 package dev.xhyrom.lighteco.common.api.impl;
 
+import com.google.common.base.Preconditions;
 import dev.xhyrom.lighteco.api.manager.UserManager;
+import dev.xhyrom.lighteco.api.model.currency.Currency;
 import dev.xhyrom.lighteco.api.model.user.User;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -31,6 +35,15 @@ public class ApiUserManager extends ApiAbstractManager<dev.xhyrom.lighteco.commo
                 .thenApply(this::wrap);
     }
 
+    @Override
+    public @NonNull CompletableFuture<Collection<User>> loadUsers(@NonNull Collection<UUID> uniqueIds) {
+        return this.plugin.getStorage().loadUsers(uniqueIds)
+                .thenApply(users -> users.stream()
+                        .map(this::wrap)
+                        .toList()
+                );
+    }
+
     @Override
     public @NonNull CompletableFuture<Void> saveUser(@NonNull User user) {
         return this.plugin.getStorage().saveUser(user);
@@ -43,11 +56,35 @@ public class ApiUserManager extends ApiAbstractManager<dev.xhyrom.lighteco.commo
 
     @Override
     public @Nullable User getUser(@NonNull UUID uniqueId) {
-        return wrap(this.handler.getIfLoaded(uniqueId));
+        // still loading, balances might not be there yet
+        if (this.plugin.getStorage().isLoading(uniqueId)) return null;
+
+        dev.xhyrom.lighteco.common.model.user.User user = this.handler.getIfLoaded(uniqueId);
+        if (user == null) return null;
+
+        return wrap(user);
     }
 
     @Override
     public boolean isLoaded(@NonNull UUID uniqueId) {
         return this.handler.isLoaded(uniqueId);
     }
+
+    @Override
+    public @Nullable UUID getUniqueId(@NonNull String username) {
+        return this.handler.getUniqueId(username);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<@Nullable UUID> lookupUniqueId(@NonNull String username) {
+        return this.handler.lookupUniqueId(username);
+    }
+
+    @Override
+    public boolean transfer(@NonNull User from, @NonNull User to, @NonNull Currency currency, @NonNull BigDecimal amount, @NonNull BigDecimal tax) {
+        dev.xhyrom.lighteco.common.model.currency.Currency internal = this.plugin.getCurrencyManager().getIfLoaded(currency.getIdentifier());
+        Preconditions.checkArgument(internal != null, "Currency " + currency.getIdentifier() + " is not registered");
+
+        return this.handler.transfer(ApiUser.cast(from), ApiUser.cast(to), internal, amount, tax);
+    }
 }
@@ -1,7 +1,10 @@
 package dev.xhyrom.lighteco.common.config;
 
 import dev.xhyrom.lighteco.common.config.housekeeper.HousekeeperConfig;
+import dev.xhyrom.lighteco.common.config.leaderboard.LeaderboardConfig;
+import dev.xhyrom.lighteco.common.config.ledger.LedgerConfig;
 import dev.xhyrom.lighteco.common.config.message.MessageConfig;
+import dev.xhyrom.lighteco.common.config.placeholder.PlaceholderConfig;
 import dev.xhyrom.lighteco.common.config.storage.StorageConfig;
 import eu.okaeri.configs.OkaeriConfig;
 import eu.okaeri.configs.annotation.Comment;
@@ -21,9 +24,27 @@ public class Config extends OkaeriConfig {
     @Comment("Save interval to storage in seconds.")
     public long saveInterval = 5L;
 
+    @Comment("Save right away once this many users have unsaved changes, without waiting for the save interval.")
+    @Comment("Also the maximum number of users saved in one batch.")
+    public int saveBatchSize = 500;
+
+    @Comment("How long should an economy operation wait for another one on the same user, in milliseconds.")
+    @Comment("Commands, Vault and API changes to one user run one at a time.")
+    public long lockTimeout = 1000L;
+
     @Comment("Messages")
     public MessageConfig messages = new MessageConfig();
 
+    @Comment("Leaderboards")
+    public LeaderboardConfig leaderboard = new LeaderboardConfig();
+
+    @Comment("Ledger")
+    @Comment("History of balance changes, see the history command.")
+    public LedgerConfig ledger = new LedgerConfig();
+
+    @Comment("Placeholders")
+    public PlaceholderConfig placeholders = new PlaceholderConfig();
+
     @Comment("Housekeeper")
     @Comment("Task that runs periodically to clean up the cache.")
     public HousekeeperConfig housekeeper = new HousekeeperConfig();
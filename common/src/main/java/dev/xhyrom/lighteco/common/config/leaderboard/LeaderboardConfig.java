@@ -0,0 +1,17 @@
+package dev.xhyrom.lighteco.common.config.leaderboard;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class LeaderboardConfig extends OkaeriConfig {
+    @Comment("Whether leaderboards (top command, rank placeholders) are enabled.")
+    @Comment("Every account with a balance is kept in memory, so you may want to disable this on huge databases.")
+    public boolean enabled = true;
+
+    @Comment("How often balance changes are applied to leaderboards, in milliseconds.")
+    @Comment("Ranks of users whose balance just changed can be this much behind.")
+    public long updateInterval = 1000;
+
+    @Comment("Number of entries per page of the top command.")
+    public int pageSize = 10;
+}
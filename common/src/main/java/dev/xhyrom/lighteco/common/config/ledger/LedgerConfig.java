@@ -0,0 +1,27 @@
+package dev.xhyrom.lighteco.common.config.ledger;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class LedgerConfig extends OkaeriConfig {
+    @Comment("Whether balance changes (deposits, withdrawals, payments, taxes) are recorded in storage.")
+    @Comment("Only SQL storage keeps them. Every change is an extra row to write, so it's disabled by default.")
+    public boolean enabled = false;
+
+    @Comment("How many changes can wait to be written.")
+    @Comment("If storage falls behind and the buffer is full, further changes are not recorded (a warning is printed).")
+    @Comment("The buffer is allocated up front, about 50 bytes per change.")
+    public int bufferSize = 65536;
+
+    @Comment("How often waiting changes are written, in milliseconds.")
+    public long flushInterval = 1000L;
+
+    @Comment("Maximum number of changes written in one batch.")
+    public int batchSize = 1000;
+
+    @Comment("Delete changes older than this many days, 0 keeps them forever.")
+    public int retentionDays = 90;
+
+    @Comment("Number of entries per page of the history command.")
+    public int pageSize = 10;
+}
@@ -15,6 +15,16 @@ public class CurrencyMessageConfig extends OkaeriConfig {
     public String pay = "<currency> <dark_gray>| <gray>Paid <gold><amount> <yellow>to <gold><target>";
     public String payWithTax = "<currency> <dark_gray>| <gray>Paid <gold><amount> <yellow>to <gold><target> <dark_gray>(<gold><taxed_amount> <yellow>after tax<dark_gray>)";
 
+    public String top = "<currency> <dark_gray>| <gray>Top balances <dark_gray>(<gray>page <yellow><page></yellow>/<yellow><pages></yellow><dark_gray>)";
+    public String topEntry = "<dark_gray>#<yellow><rank> <gray><target> <dark_gray>| <gold><balance>";
+    public String topEmpty = "<red>Nobody is on the leaderboard yet.";
+    public String topLoading = "<red>The leaderboard is still loading, please try again in a moment.";
+
+    public String history = "<currency> <dark_gray>| <gray>History of <yellow><target> <dark_gray>(<gray>page <yellow><page></yellow><dark_gray>)";
+    public String historyEntry = "<dark_gray><time> <gray><type> <gold><amount> <dark_gray>| <gold><balance> <dark_gray><other>";
+    public String historyEmpty = "<red>No balance changes on this page.";
+    public String historyFailed = "<red>Failed to load the history, please try again later.";
+
     public String wait = "<red>Please wait a moment before using this command again.";
     public String notEnoughMoney = "<red>You don't have enough money!";
     public String cannotPaySelf = "<red>You cannot pay yourself!";
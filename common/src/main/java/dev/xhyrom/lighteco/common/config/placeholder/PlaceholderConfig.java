@@ -0,0 +1,13 @@
+package dev.xhyrom.lighteco.common.config.placeholder;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class PlaceholderConfig extends OkaeriConfig {
+    @Comment("Shown while data of the player is being loaded in the background.")
+    @Comment("Placeholders never wait for the database, so offline players show this for a moment.")
+    public String loading = "...";
+
+    @Comment("Shown by the rank placeholder for players without a rank.")
+    public String unranked = "-";
+}
@@ -1,5 +1,7 @@
 package dev.xhyrom.lighteco.common.config.storage;
 
+import dev.xhyrom.lighteco.common.storage.StorageExecutorType;
+import dev.xhyrom.lighteco.common.storage.StorageLayout;
 import dev.xhyrom.lighteco.common.storage.StorageType;
 import eu.okaeri.configs.OkaeriConfig;
 import eu.okaeri.configs.annotation.Comment;
@@ -13,6 +15,38 @@ public class StorageConfig extends OkaeriConfig {
     @Comment("You don't need to worry about this if you're using local database.")
     public StorageDataConfig data = new StorageDataConfig();
 
+    @Comment("Threads used for storage operations.")
+    @Comment("Storage runs on its own threads, so slow queries don't block other plugins.")
+    public StorageWorkersConfig workers = new StorageWorkersConfig();
+
+    @Comment("Retrying of failed saves.")
+    @Comment("Changes are kept in memory until they are saved, retries slow down while storage keeps failing.")
+    public StorageRetryConfig retry = new StorageRetryConfig();
+
+    @Comment("Local journal of balance changes between saves.")
+    public StorageJournalConfig journal = new StorageJournalConfig();
+
+    @Comment("Which threads run storage operations.")
+    @Comment("Available executors: platform, virtual")
+    @Comment("virtual runs every operation on its own virtual thread (Java 21+), falls back to platform on older versions.")
+    @Comment("In virtual mode, at most data.maximumPoolSize operations run at once.")
+    public StorageExecutorType executor = StorageExecutorType.PLATFORM;
+
+    @Comment("How balances are stored in SQL databases.")
+    @Comment("Available layouts: table_per_currency, single_table")
+    @Comment("single_table keeps all balances in one table, so a user is loaded and saved with one statement.")
+    @Comment("Switching to single_table copies existing balances on startup, old tables are kept as a backup.")
+    public StorageLayout layout = StorageLayout.TABLE_PER_CURRENCY;
+
+    @Comment("Store unique ids as 16 bytes (uuid on PostgreSQL) instead of 36 characters.")
+    @Comment("Makes tables and indexes less than half the size. Existing tables are converted on startup.")
+    @Comment("Can't be turned off again once tables were converted.")
+    public boolean binaryUniqueIds = false;
+
+    @Comment("Whether slow schema changes (new indexes) on tables with data run in the background.")
+    @Comment("On MySQL, MariaDB and PostgreSQL tables stay writable while they run. If disabled, startup waits until they are done.")
+    public boolean backgroundMigrations = true;
+
     @Comment("Table prefix.")
     public String tablePrefix = "lighteco";
 }
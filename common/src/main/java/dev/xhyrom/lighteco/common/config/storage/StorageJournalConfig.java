@@ -0,0 +1,18 @@
+package dev.xhyrom.lighteco.common.config.storage;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class StorageJournalConfig extends OkaeriConfig {
+    @Comment("Write every balance change to a journal file in the plugin folder before it's saved.")
+    @Comment("Changes made since the last save survive a crash, they are saved again on the next startup.")
+    public boolean enabled = false;
+
+    @Comment("Size of each of the two journal files, in megabytes.")
+    @Comment("Users are saved right away when it fills up.")
+    public int size = 8;
+
+    @Comment("How often the journal is flushed to disk, in milliseconds.")
+    @Comment("Changes survive a crash of the server right away, this is for crashes of the whole machine.")
+    public long syncInterval = 100;
+}
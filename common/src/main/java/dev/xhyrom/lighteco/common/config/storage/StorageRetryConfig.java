@@ -0,0 +1,30 @@
+package dev.xhyrom.lighteco.common.config.storage;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class StorageRetryConfig extends OkaeriConfig {
+    @Comment("How long to wait before retrying after the first failed save or leaderboard load, in milliseconds.")
+    @Comment("Doubles with every failure in a row.")
+    public long initialDelay = 1000;
+
+    @Comment("Maximum wait between retries, in milliseconds.")
+    public long maxDelay = 60000;
+
+    @Comment("Once this many users wait for a retry, their changes are also written to pending-saves.bin.")
+    @Comment("The file survives a restart and is written to storage once currencies are registered again.")
+    @Comment("Unsaved changes are always written to the file on shutdown if storage is still failing.")
+    public int spillThreshold = 1000;
+
+    /**
+     * @param failures failed attempts in a row, at least 1
+     * @return how long to wait before the next attempt, in milliseconds
+     */
+    public long delay(int failures) {
+        long delay = this.initialDelay << Math.min(failures - 1, 30);
+        if (delay <= 0 || delay > this.maxDelay)
+            delay = this.maxDelay;
+
+        return delay;
+    }
+}
@@ -0,0 +1,20 @@
+package dev.xhyrom.lighteco.common.config.storage;
+
+import eu.okaeri.configs.OkaeriConfig;
+import eu.okaeri.configs.annotation.Comment;
+
+public class StorageWorkersConfig extends OkaeriConfig {
+    @Comment("Maximum number of threads running storage operations.")
+    @Comment("There is no point in setting this higher than the maximum pool size of your database.")
+    public int threads = 8;
+
+    @Comment("Maximum number of storage operations waiting for a free thread.")
+    public int queueSize = 1024;
+
+    @Comment("How long to wait for a free spot in the queue before failing the operation, in milliseconds.")
+    @Comment("Operations started on the server thread never wait, they fail right away.")
+    public long queueTimeout = 1000;
+
+    @Comment("How long to wait for pending storage operations on shutdown, in milliseconds.")
+    public long shutdownTimeout = 10000;
+}
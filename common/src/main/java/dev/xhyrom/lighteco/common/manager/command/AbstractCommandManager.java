@@ -1,8 +1,13 @@
 package dev.xhyrom.lighteco.common.manager.command;
 
+import dev.xhyrom.lighteco.api.model.leaderboard.LeaderboardEntry;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
 import dev.xhyrom.lighteco.common.config.message.CurrencyMessageConfig;
+import dev.xhyrom.lighteco.common.manager.ledger.LedgerManager;
+import dev.xhyrom.lighteco.common.manager.user.UserLocks;
 import dev.xhyrom.lighteco.common.model.chat.CommandSender;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.leaderboard.Leaderboard;
 import dev.xhyrom.lighteco.common.model.user.User;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import net.kyori.adventure.text.minimessage.MiniMessage;
@@ -10,51 +15,53 @@ import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.ArrayList;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
 public abstract class AbstractCommandManager implements CommandManager {
+    private static final String LEDGER_SOURCE = "command";
+    private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
     public final LightEcoPlugin plugin;
     private final MiniMessage miniMessage = MiniMessage.miniMessage();
     private final Map<String, CurrencyMessageConfig> config;
-    private final ArrayList<UUID> mustWait = new ArrayList<>();
 
     protected AbstractCommandManager(LightEcoPlugin plugin) {
         this.plugin = plugin;
         this.config = this.plugin.getConfig().messages.currency;
     }
 
-    @Override
-    public boolean canUse(CommandSender sender, Currency currency) {
-        // Console doesn't need to wait
-        if (sender.getUniqueId() == null) return true;
-
-        if (mustWait.contains(sender.getUniqueId())) {
-            sender.sendMessage(
-                    miniMessage.deserialize(
-                            this.getConfig(currency).wait
-                    )
-            );
-
-            return false;
-        }
-
-        return true;
+    /**
+     * Locks the sender and the target for the duration of a command.
+     *
+     * @return the held locks, or null if the wait message was sent
+     */
+    private UserLocks.Hold lock(CommandSender sender, Currency currency, User target) {
+        UserLocks.Hold hold = this.plugin.getUserManager().getLocks().tryLock(sender.getUniqueId(), target.getUniqueId());
+        if (hold == null)
+            this.sendWait(sender, currency);
+
+        return hold;
     }
 
-    private void addToMustWait(UUID ...uuids) {
-        for (UUID uuid : uuids) {
-            if (uuid != null)
-                mustWait.add(uuid);
-        }
+    /**
+     * Attributes balance changes of the command to the sender in the ledger.
+     */
+    private LedgerManager.Scope ledgerScope(CommandSender sender) {
+        return this.plugin.getLedgerManager().scope(sender.getUniqueId(), LEDGER_SOURCE);
     }
 
-    private void removeFromMustWait(UUID ...uuids) {
-        for (UUID uuid : uuids) {
-            if (uuid != null)
-                mustWait.remove(uuid);
-        }
+    private void sendWait(CommandSender sender, Currency currency) {
+        sender.sendMessage(
+                miniMessage.deserialize(
+                        this.getConfig(currency).wait
+                )
+        );
     }
 
     private CurrencyMessageConfig getConfig(Currency currency) {
@@ -98,10 +105,14 @@ public abstract class AbstractCommandManager implements CommandManager {
 
     @Override
     public void onSet(CommandSender sender, Currency currency, User target, BigDecimal amount) {
-        addToMustWait(sender.getUniqueId(), target.getUniqueId());
         amount = amount.setScale(currency.getProxy().fractionalDigits(), RoundingMode.DOWN);
 
-        target.setBalance(currency, amount);
+        UserLocks.Hold hold = this.lock(sender, currency, target);
+        if (hold == null) return;
+
+        try (hold; LedgerManager.Scope scope = this.ledgerScope(sender)) {
+            target.setBalance(currency, amount);
+        }
 
         sender.sendMessage(
                 miniMessage.deserialize(
@@ -111,16 +122,18 @@ public abstract class AbstractCommandManager implements CommandManager {
                         Placeholder.parsed("amount", amount.toPlainString())
                 )
         );
-
-        removeFromMustWait(target.getUniqueId(), sender.getUniqueId());
     }
 
     @Override
     public void onGive(CommandSender sender, Currency currency, User target, BigDecimal amount) {
-        addToMustWait(sender.getUniqueId(), target.getUniqueId());
         amount = amount.setScale(currency.getProxy().fractionalDigits(), RoundingMode.DOWN);
 
-        target.deposit(currency, amount);
+        UserLocks.Hold hold = this.lock(sender, currency, target);
+        if (hold == null) return;
+
+        try (hold; LedgerManager.Scope scope = this.ledgerScope(sender)) {
+            target.deposit(currency, amount);
+        }
 
         sender.sendMessage(
                 miniMessage.deserialize(
@@ -131,16 +144,18 @@ public abstract class AbstractCommandManager implements CommandManager {
                         Placeholder.parsed("balance", target.getBalance(currency).toPlainString())
                 )
         );
-
-        removeFromMustWait(target.getUniqueId(), sender.getUniqueId());
     }
 
     @Override
     public void onTake(CommandSender sender, Currency currency, User target, BigDecimal amount) {
-        addToMustWait(sender.getUniqueId(), target.getUniqueId());
         amount = amount.setScale(currency.getProxy().fractionalDigits(), RoundingMode.DOWN);
 
-        target.withdraw(currency, amount);
+        UserLocks.Hold hold = this.lock(sender, currency, target);
+        if (hold == null) return;
+
+        try (hold; LedgerManager.Scope scope = this.ledgerScope(sender)) {
+            target.withdraw(currency, amount);
+        }
 
         sender.sendMessage(
                 miniMessage.deserialize(
@@ -151,13 +166,11 @@ public abstract class AbstractCommandManager implements CommandManager {
                         Placeholder.parsed("balance", target.getBalance(currency).toPlainString())
                 )
         );
-
-        removeFromMustWait(target.getUniqueId(), sender.getUniqueId());
     }
 
     @Override
     public void onPay(CommandSender sender, Currency currency, User target, BigDecimal amount) {
-        if (sender.getUniqueId() != null && (sender.getUniqueId() == target.getUniqueId())) {
+        if (sender.getUniqueId() != null && sender.getUniqueId().equals(target.getUniqueId())) {
             sender.sendMessage(
                     miniMessage.deserialize(this.getConfig(currency).cannotPaySelf)
             );
@@ -169,25 +182,31 @@ public abstract class AbstractCommandManager implements CommandManager {
 
         User user = this.plugin.getUserManager().getIfLoaded(sender.getUniqueId());
 
-        if (user.getBalance(currency).compareTo(amount) < 0) {
-            sender.sendMessage(
-                    miniMessage.deserialize(this.getConfig(currency).notEnoughMoney)
-            );
-
-            return;
-        }
-
-        addToMustWait(sender.getUniqueId(), target.getUniqueId());
-
         // calculate tax using Currency#calculateTax
         BigDecimal tax = currency.getProxy().calculateTax(user.getProxy(), amount);
-        tax = tax.setScale(currency.getProxy().fractionalDigits(), RoundingMode.DOWN);
+        tax = tax.setScale(currency.getProxy().fractionalDigits(), RoundingMode.DOWN)
+                .max(BigDecimal.ZERO)
+                .min(amount);
 
         // subtract tax from amount
         BigDecimal taxedAmount = amount.subtract(tax);
 
-        target.deposit(currency, taxedAmount);
-        user.withdraw(currency, amount);
+        UserLocks.Hold hold = this.lock(sender, currency, target);
+        if (hold == null) return;
+
+        // the balance check and both balance changes happen in one step
+        boolean transferred;
+        try (hold; LedgerManager.Scope scope = this.ledgerScope(sender)) {
+            transferred = this.plugin.getUserManager().transfer(user, target, currency, amount, tax);
+        }
+
+        if (!transferred) {
+            sender.sendMessage(
+                    miniMessage.deserialize(this.getConfig(currency).notEnoughMoney)
+            );
+
+            return;
+        }
 
         String template = tax.compareTo(BigDecimal.ZERO) > 0
                 ? this.getConfig(currency).payWithTax
@@ -205,7 +224,112 @@ public abstract class AbstractCommandManager implements CommandManager {
                         Placeholder.parsed("receiver_balance", target.getBalance(currency).toPlainString())
                 )
         );
+    }
+
+    @Override
+    public void onTop(CommandSender sender, Currency currency, int page) {
+        Leaderboard leaderboard = this.plugin.getLeaderboardManager().getLeaderboard(currency);
+
+        if (leaderboard == null || !leaderboard.isReady()) {
+            sender.sendMessage(
+                    miniMessage.deserialize(this.getConfig(currency).topLoading)
+            );
+
+            return;
+        }
+
+        int pageSize = this.plugin.getConfig().leaderboard.pageSize;
+        int pages = Math.max(1, (leaderboard.size() + pageSize - 1) / pageSize);
+        page = Math.min(Math.max(page, 1), pages);
+
+        List<LeaderboardEntry> entries = leaderboard.getPage(page, pageSize);
+        if (entries.isEmpty()) {
+            sender.sendMessage(
+                    miniMessage.deserialize(this.getConfig(currency).topEmpty)
+            );
+
+            return;
+        }
+
+        sender.sendMessage(
+                miniMessage.deserialize(
+                        this.getConfig(currency).top,
+                        Placeholder.parsed("currency", currency.getIdentifier()),
+                        Placeholder.parsed("page", String.valueOf(page)),
+                        Placeholder.parsed("pages", String.valueOf(pages))
+                )
+        );
+
+        for (LeaderboardEntry entry : entries) {
+            String name = entry.username() != null ? entry.username() : entry.uniqueId().toString();
+
+            sender.sendMessage(
+                    miniMessage.deserialize(
+                            this.getConfig(currency).topEntry,
+                            Placeholder.parsed("currency", currency.getIdentifier()),
+                            Placeholder.parsed("rank", String.valueOf(entry.rank())),
+                            Placeholder.unparsed("target", name),
+                            Placeholder.parsed("balance", entry.balance().toPlainString())
+                    )
+            );
+        }
+    }
+
+    @Override
+    public void onHistory(CommandSender sender, Currency currency, UUID target, String targetName, int page) {
+        int current = Math.max(page, 1);
+        int fractionalDigits = currency.getProxy().fractionalDigits();
+
+        this.plugin.getLedgerManager().getHistory(target, currency, current, this.plugin.getConfig().ledger.pageSize)
+                .whenComplete((entries, throwable) -> {
+                    if (throwable != null) {
+                        this.plugin.getBootstrap().getLogger().error("Failed to load history of %s", throwable, target);
+                        sender.sendMessage(
+                                miniMessage.deserialize(this.getConfig(currency).historyFailed)
+                        );
+
+                        return;
+                    }
+
+                    if (entries.isEmpty()) {
+                        sender.sendMessage(
+                                miniMessage.deserialize(this.getConfig(currency).historyEmpty)
+                        );
+
+                        return;
+                    }
+
+                    sender.sendMessage(
+                            miniMessage.deserialize(
+                                    this.getConfig(currency).history,
+                                    Placeholder.parsed("currency", currency.getIdentifier()),
+                                    Placeholder.unparsed("target", targetName),
+                                    Placeholder.parsed("page", String.valueOf(current))
+                            )
+                    );
+
+                    for (LedgerEntry entry : entries) {
+                        sender.sendMessage(
+                                miniMessage.deserialize(
+                                        this.getConfig(currency).historyEntry,
+                                        Placeholder.parsed("currency", currency.getIdentifier()),
+                                        Placeholder.parsed("time", HISTORY_TIME.format(entry.time())),
+                                        Placeholder.parsed("type", entry.type().name().toLowerCase(Locale.ROOT)),
+                                        Placeholder.parsed("amount", entry.amount().setScale(fractionalDigits, RoundingMode.DOWN).toPlainString()),
+                                        Placeholder.parsed("balance", entry.balance().setScale(fractionalDigits, RoundingMode.DOWN).toPlainString()),
+                                        Placeholder.unparsed("other", this.name(entry.other())),
+                                        Placeholder.unparsed("source", entry.source() != null ? entry.source() : "")
+                                )
+                        );
+                    }
+                });
+    }
+
+    private String name(UUID uniqueId) {
+        if (uniqueId == null)
+            return "";
 
-        removeFromMustWait(target.getUniqueId(), sender.getUniqueId());
+        User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+        return user != null && user.getUsername() != null ? user.getUsername() : uniqueId.toString();
     }
 }
@@ -6,13 +6,12 @@ import dev.xhyrom.lighteco.common.model.user.User;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.math.BigDecimal;
+import java.util.UUID;
 
 public interface CommandManager {
     void registerCurrencyCommand(@NonNull Currency currency);
     void registerCurrencyCommand(@NonNull Currency currency, boolean main);
 
-    boolean canUse(CommandSender sender, Currency currency);
-
     void onBalance(CommandSender sender, Currency currency);
     void onBalance(CommandSender sender, Currency currency, User target);
 
@@ -20,4 +19,11 @@ public interface CommandManager {
     void onGive(CommandSender sender, Currency currency, User target, BigDecimal amount);
     void onTake(CommandSender sender, Currency currency, User target, BigDecimal amount);
     void onPay(CommandSender sender, Currency currency, User target, BigDecimal amount);
+
+    void onTop(CommandSender sender, Currency currency, int page);
+
+    /**
+     * Shows a page of the balance history, the target doesn't have to be loaded.
+     */
+    void onHistory(CommandSender sender, Currency currency, UUID target, String targetName, int page);
 }
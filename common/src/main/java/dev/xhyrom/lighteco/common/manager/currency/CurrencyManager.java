@@ -3,11 +3,18 @@ package dev.xhyrom.lighteco.common.manager.currency;
 import dev.xhyrom.lighteco.common.manager.Manager;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.Collection;
 
 public interface CurrencyManager extends Manager<String, Currency> {
     @NonNull Collection<Currency> getRegisteredCurrencies();
 
+    /**
+     * @param ordinal the ordinal assigned on registration, see {@link Currency#getOrdinal()}
+     * @return the currency, or null if no currency has this ordinal
+     */
+    @Nullable Currency getByOrdinal(int ordinal);
+
     void registerCurrency(@NonNull Currency currency);
 }
@@ -4,12 +4,17 @@ import dev.xhyrom.lighteco.common.manager.SingleManager;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 public class StandardCurrencyManager extends SingleManager<String, Currency> implements CurrencyManager {
     private final LightEcoPlugin plugin;
 
+    // registered currencies, indexed by ordinal
+    private volatile Currency[] ordinals = new Currency[0];
+
     public StandardCurrencyManager(LightEcoPlugin plugin) {
         this.plugin = plugin;
     }
@@ -30,7 +35,13 @@ public class StandardCurrencyManager extends SingleManager<String, Currency> imp
     }
 
     @Override
-    public void registerCurrency(@NonNull Currency currency) {
+    public @Nullable Currency getByOrdinal(int ordinal) {
+        Currency[] ordinals = this.ordinals;
+        return ordinal >= 0 && ordinal < ordinals.length ? ordinals[ordinal] : null;
+    }
+
+    @Override
+    public synchronized void registerCurrency(@NonNull Currency currency) {
         if (this.isLoaded(currency.getIdentifier()))
             throw new IllegalArgumentException("Currency with identifier " + currency.getIdentifier() + " already registered");
 
@@ -38,6 +49,18 @@ public class StandardCurrencyManager extends SingleManager<String, Currency> imp
             this.plugin.getBootstrap().getLogger().info("Registering currency " + currency.getIdentifier());
 
         this.plugin.getStorage().registerCurrencySync(currency.getProxy());
+
+        int ordinal = this.ordinals.length;
+        Currency[] ordinals = Arrays.copyOf(this.ordinals, ordinal + 1);
+        ordinals[ordinal] = currency;
+
+        currency.setOrdinal(ordinal);
         this.map.put(currency.getIdentifier(), currency);
+        this.ordinals = ordinals;
+
+        this.plugin.getLeaderboardManager().register(currency);
+
+        // changes that couldn't be saved in the last run
+        this.plugin.getUserSaveTask().getPendingSaveFile().restore(currency);
     }
 }
@@ -0,0 +1,26 @@
+package dev.xhyrom.lighteco.common.manager.leaderboard;
+
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.leaderboard.Leaderboard;
+import dev.xhyrom.lighteco.common.model.user.User;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.UUID;
+
+public interface LeaderboardManager {
+    /**
+     * Creates the leaderboard of a newly registered currency and seeds it from storage in the background.
+     */
+    void register(Currency currency);
+
+    /**
+     * @return the leaderboard, or null if leaderboards are disabled or the currency is not registered
+     */
+    @Nullable Leaderboard getLeaderboard(Currency currency);
+
+    /**
+     * Queues the rank of a user to be updated after their balance changed, applied in the background.
+     */
+    void update(User user, Currency currency);
+    void updateUsername(UUID uniqueId, @Nullable String username);
+}
@@ -0,0 +1,108 @@
+package dev.xhyrom.lighteco.common.manager.leaderboard;
+
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.leaderboard.Leaderboard;
+import dev.xhyrom.lighteco.common.model.user.User;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class StandardLeaderboardManager implements LeaderboardManager {
+    private final LightEcoPlugin plugin;
+
+    // indexed by Currency#getOrdinal(), copied on register so lookups don't need a lock
+    private volatile Leaderboard[] leaderboards = new Leaderboard[0];
+
+    public StandardLeaderboardManager(LightEcoPlugin plugin) {
+        this.plugin = plugin;
+
+        if (this.plugin.getConfig().leaderboard.enabled) {
+            this.plugin.getBootstrap().getScheduler().asyncRepeating(
+                    this::drain,
+                    this.plugin.getConfig().leaderboard.updateInterval,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    @Override
+    public synchronized void register(Currency currency) {
+        if (!this.plugin.getConfig().leaderboard.enabled)
+            return;
+
+        int ordinal = currency.getOrdinal();
+        Leaderboard[] leaderboards = Arrays.copyOf(this.leaderboards, Math.max(this.leaderboards.length, ordinal + 1));
+
+        Leaderboard leaderboard = new Leaderboard(currency);
+        leaderboards[ordinal] = leaderboard;
+        this.leaderboards = leaderboards;
+
+        this.seed(leaderboard, 0);
+    }
+
+    private void seed(Leaderboard leaderboard, int failures) {
+        Currency currency = leaderboard.getCurrency();
+
+        long start = System.currentTimeMillis();
+        this.plugin.getStorage().loadBalances(currency.getProxy(), leaderboard::seed)
+                .whenComplete((v, throwable) -> {
+                    if (throwable != null) {
+                        long delay = this.plugin.getConfig().storage.retry.delay(failures + 1);
+                        this.plugin.getBootstrap().getLogger().error("Failed to load leaderboard of %s, retrying in %sms", throwable, currency.getIdentifier(), delay);
+
+                        leaderboard.reset();
+                        this.plugin.getBootstrap().getScheduler().asyncLater(() -> this.seed(leaderboard, failures + 1), delay, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+
+                    leaderboard.markReady();
+
+                    // after a reset, storage may be behind the balances of loaded users
+                    if (failures > 0) {
+                        for (User user : this.plugin.getUserManager().values()) {
+                            leaderboard.update(user);
+                        }
+                    }
+
+                    if (this.plugin.getConfig().debug) {
+                        this.plugin.getBootstrap().getLogger().info("Loaded leaderboard of %s (%s users) in %sms", currency.getIdentifier(), leaderboard.size(), System.currentTimeMillis() - start);
+                    }
+                });
+    }
+
+    private void drain() {
+        for (Leaderboard leaderboard : this.leaderboards) {
+            if (leaderboard != null) {
+                leaderboard.drain();
+            }
+        }
+    }
+
+    @Override
+    public @Nullable Leaderboard getLeaderboard(Currency currency) {
+        Leaderboard[] leaderboards = this.leaderboards;
+        int ordinal = currency.getOrdinal();
+
+        return ordinal >= 0 && ordinal < leaderboards.length ? leaderboards[ordinal] : null;
+    }
+
+    @Override
+    public void update(User user, Currency currency) {
+        Leaderboard leaderboard = this.getLeaderboard(currency);
+        if (leaderboard != null) {
+            leaderboard.update(user);
+        }
+    }
+
+    @Override
+    public void updateUsername(UUID uniqueId, @Nullable String username) {
+        for (Leaderboard leaderboard : this.leaderboards) {
+            if (leaderboard != null) {
+                leaderboard.setUsername(uniqueId, username);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package dev.xhyrom.lighteco.common.manager.ledger;
+
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded ring buffer of balance changes, many producers and a single consumer.
+ * <p>
+ *     Changes are stored field by field in preallocated arrays, so recording one allocates nothing.
+ *     {@link LedgerEntry LedgerEntries} (and their BigDecimals) are only built by the consumer.
+ * </p>
+ * <p>
+ *     Producers claim a slot with a single CAS and never wait, not even for each other.
+ *     A claimed slot is visible to the consumer once its sequence is published,
+ *     the consumer stops at the first slot that isn't published yet.
+ * </p>
+ */
+public class LedgerBuffer {
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final int mask;
+
+    // sequence + 1 of the change in each slot, written last, so the fields are visible once it is
+    private final AtomicLongArray published;
+    private final long[] times;
+    private final UUID[] users;
+    private final Currency[] currencies;
+    private final LedgerEntry.Type[] types;
+    private final long[] amounts;
+    private final long[] balances;
+    private final UUID[] others;
+    private final String[] sources;
+
+    // next sequence to claim, shared by producers
+    private final AtomicLong tail = new AtomicLong();
+    // next sequence to consume, written by the consumer only
+    private volatile long head;
+
+    /**
+     * @param capacity the minimum capacity, rounded up to a power of two
+     */
+    public LedgerBuffer(int capacity) {
+        int size = capacity <= 2 ? 2 : Math.min(MAXIMUM_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        this.times = new long[size];
+        this.users = new UUID[size];
+        this.currencies = new Currency[size];
+        this.types = new LedgerEntry.Type[size];
+        this.amounts = new long[size];
+        this.balances = new long[size];
+        this.others = new UUID[size];
+        this.sources = new String[size];
+    }
+
+    /**
+     * @param time when the change happened, in epoch milliseconds
+     * @param amount the amount in minor units
+     * @param balance the balance right after the change, in minor units
+     * @return false if the buffer is full
+     */
+    public boolean offer(long time, UUID user, Currency currency, LedgerEntry.Type type, long amount, long balance, @Nullable UUID other, @Nullable String source) {
+        long sequence;
+        do {
+            sequence = this.tail.get();
+            if (sequence - this.head > this.mask)
+                return false;
+        } while (!this.tail.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & this.mask;
+        this.times[index] = time;
+        this.users[index] = user;
+        this.currencies[index] = currency;
+        this.types[index] = type;
+        this.amounts[index] = amount;
+        this.balances[index] = balance;
+        this.others[index] = other;
+        this.sources[index] = source;
+
+        this.published.lazySet(index, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Builds entries of the waiting changes into the list, in the order they were offered.
+     *
+     * @return the number of moved entries
+     */
+    public synchronized int drain(List<LedgerEntry> into, int max) {
+        long head = this.head;
+        int drained = 0;
+
+        while (drained < max) {
+            int index = (int) head & this.mask;
+            if (this.published.get(index) != head + 1)
+                break;
+
+            Currency currency = this.currencies[index];
+            into.add(new LedgerEntry(
+                    0,
+                    Instant.ofEpochMilli(this.times[index]),
+                    this.users[index],
+                    currency.getIdentifier(),
+                    this.types[index],
+                    currency.fromMinorUnits(this.amounts[index]),
+                    currency.fromMinorUnits(this.balances[index]),
+                    this.others[index],
+                    this.sources[index]
+            ));
+
+            // cleared before the head moves on, so the buffer doesn't keep them alive
+            this.users[index] = null;
+            this.currencies[index] = null;
+            this.others[index] = null;
+            this.sources[index] = null;
+
+            head++;
+            drained++;
+        }
+
+        this.head = head;
+        return drained;
+    }
+
+    public int size() {
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+}
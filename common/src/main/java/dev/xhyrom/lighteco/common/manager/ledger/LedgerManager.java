@@ -0,0 +1,41 @@
+package dev.xhyrom.lighteco.common.manager.ledger;
+
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.User;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public interface LedgerManager {
+    boolean isEnabled();
+
+    /**
+     * Records a balance change, called by {@link User} right after it happened.
+     * Never blocks, the entry is written to storage later.
+     *
+     * @param amount the amount in minor units
+     * @param balance the balance right after the change, in minor units
+     * @param other the other user of a payment, if null the actor of the current {@link Scope} is used
+     */
+    void record(User user, Currency currency, LedgerEntry.Type type, long amount, long balance, @Nullable UUID other);
+
+    /**
+     * Attributes changes made by the current thread to the actor and source until the scope is closed.
+     */
+    Scope scope(@Nullable UUID actor, String source);
+
+    CompletableFuture<List<LedgerEntry>> getHistory(UUID uniqueId, @Nullable Currency currency, int page, int pageSize);
+
+    /**
+     * Writes everything still waiting, called on shutdown before storage is closed.
+     */
+    void shutdown();
+
+    interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
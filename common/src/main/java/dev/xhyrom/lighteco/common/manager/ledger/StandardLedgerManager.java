@@ -0,0 +1,273 @@
+package dev.xhyrom.lighteco.common.manager.ledger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import dev.xhyrom.lighteco.common.config.ledger.LedgerConfig;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.User;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records balance changes into a {@link LedgerBuffer}, a background thread writes them to storage in batches.
+ * <p>
+ *     Recording never waits for storage. If storage fails, the batch is kept and retried on the next tick,
+ *     while new changes pile up in the buffer. Once it's full, changes are dropped and counted rather than
+ *     blocking economy operations.
+ * </p>
+ * <p>
+ *     The same thread deletes entries older than the retention period once an hour.
+ * </p>
+ * <p>
+ *     History is read page by page below the last id of the previous page. The id each page starts below
+ *     is remembered for a while, so paging on from a page already read is a single index lookup.
+ * </p>
+ */
+public class StandardLedgerManager implements LedgerManager {
+    private static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final Scope NO_SCOPE = () -> {};
+
+    private final LightEcoPlugin plugin;
+    private final LedgerConfig config;
+    private final @Nullable LedgerBuffer buffer;
+    private final @Nullable ScheduledExecutorService executor;
+
+    private final ThreadLocal<Cause> cause = new ThreadLocal<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // id of the newest entry not on the page before, by page
+    private final Cache<Page, Long> cursors = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    // a batch that failed to be written, only touched by the ledger thread
+    private final List<LedgerEntry> batch = new ArrayList<>();
+    private boolean failing;
+
+    public StandardLedgerManager(LightEcoPlugin plugin) {
+        this.plugin = plugin;
+        this.config = plugin.getConfig().ledger;
+
+        if (!this.config.enabled) {
+            this.buffer = null;
+            this.executor = null;
+            return;
+        }
+
+        this.buffer = new LedgerBuffer(this.config.bufferSize);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lighteco-ledger")
+                .setDaemon(true)
+                .build());
+
+        long flushInterval = Math.max(1, this.config.flushInterval);
+        this.executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+        if (this.config.retentionDays > 0)
+            this.executor.scheduleWithFixedDelay(this::prune, TimeUnit.MINUTES.toMillis(1), PRUNE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.buffer != null;
+    }
+
+    @Override
+    public void record(User user, Currency currency, LedgerEntry.Type type, long amount, long balance, @Nullable UUID other) {
+        if (this.buffer == null)
+            return;
+
+        Cause cause = this.cause.get();
+        if (other == null && cause != null)
+            other = cause.actor();
+
+        // only primitives and existing references, the entry is built by the ledger thread
+        boolean offered = this.buffer.offer(
+                System.currentTimeMillis(),
+                user.getUniqueId(),
+                currency,
+                type,
+                amount,
+                balance,
+                other,
+                cause != null ? cause.source() : null
+        );
+
+        // reported by the ledger thread, logging here could flood the console
+        if (!offered)
+            this.dropped.incrementAndGet();
+    }
+
+    @Override
+    public Scope scope(@Nullable UUID actor, String source) {
+        // nothing is recorded, so API and Vault calls don't pay for it
+        if (this.buffer == null)
+            return NO_SCOPE;
+
+        Cause cause = new Cause(actor, source, this.cause.get());
+        this.cause.set(cause);
+
+        return cause;
+    }
+
+    @Override
+    public CompletableFuture<List<LedgerEntry>> getHistory(UUID uniqueId, @Nullable Currency currency, int page, int pageSize) {
+        if (page < 1 || pageSize < 1)
+            return CompletableFuture.completedFuture(List.of());
+
+        return this.getHistory(new Page(uniqueId, currency != null ? currency.getIdentifier() : null, page, pageSize));
+    }
+
+    private CompletableFuture<List<LedgerEntry>> getHistory(Page page) {
+        Long before = page.number() == 1 ? Long.valueOf(Long.MAX_VALUE) : this.cursors.getIfPresent(page);
+        if (before != null)
+            return this.getHistory(page, before);
+
+        // not read up to here yet, continue after the page before
+        return this.getHistory(page.previous()).thenCompose(previous -> previous.size() < page.size()
+                ? CompletableFuture.completedFuture(List.of())
+                : this.getHistory(page, previous.get(previous.size() - 1).id()));
+    }
+
+    private CompletableFuture<List<LedgerEntry>> getHistory(Page page, long before) {
+        return this.plugin.getStorage().loadLedgerEntries(page.uniqueId(), page.currency(), before, page.size())
+                .thenApply(entries -> {
+                    if (entries.size() == page.size())
+                        this.cursors.put(page.next(), entries.get(entries.size() - 1).id());
+
+                    return entries;
+                });
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.executor == null)
+            return;
+
+        // on the ledger thread, after a flush that may be running, so nothing else touches the batch
+        Future<Integer> last = this.executor.submit(() -> this.flush() ? 0 : this.batch.size() + this.buffer.size());
+        this.executor.shutdown();
+
+        try {
+            int lost = last.get(5, TimeUnit.SECONDS);
+            if (lost > 0)
+                this.plugin.getBootstrap().getLogger().error("Failed to write %s ledger entries on shutdown, they are lost", lost);
+        } catch (TimeoutException e) {
+            this.executor.shutdownNow();
+            this.plugin.getBootstrap().getLogger().error("Writing the ledger took too long on shutdown, up to %s entries are lost", this.buffer.size());
+        } catch (ExecutionException e) {
+            this.plugin.getBootstrap().getLogger().error("Failed to write the ledger on shutdown", e.getCause());
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if everything waiting was written
+     */
+    private boolean flush() {
+        long dropped = this.dropped.getAndSet(0);
+        if (dropped > 0)
+            this.plugin.getBootstrap().getLogger().warn("The ledger buffer was full, %s balance changes were not recorded. Consider increasing ledger.bufferSize", dropped);
+
+        int batchSize = Math.max(1, this.config.batchSize);
+
+        try {
+            while (true) {
+                // a failed batch goes first, so entries stay in order
+                if (this.batch.isEmpty() && this.buffer.drain(this.batch, batchSize) == 0)
+                    break;
+
+                this.plugin.getStorage().saveLedgerEntriesSync(this.batch);
+                this.batch.clear();
+            }
+        } catch (RuntimeException e) {
+            if (!this.failing) {
+                this.failing = true;
+                this.plugin.getBootstrap().getLogger().error("Failed to write the ledger, retrying every %sms", e, this.config.flushInterval);
+            }
+
+            return false;
+        }
+
+        if (this.failing) {
+            this.failing = false;
+            this.plugin.getBootstrap().getLogger().info("Writing the ledger works again");
+        }
+
+        return true;
+    }
+
+    private void prune() {
+        Instant before = Instant.now().minus(Duration.ofDays(this.config.retentionDays));
+
+        try {
+            long deleted = this.plugin.getStorage().deleteLedgerEntriesSync(before);
+
+            if (this.plugin.getConfig().debug)
+                this.plugin.getBootstrap().getLogger().info("Deleted %s ledger entries older than %s days", deleted, this.config.retentionDays);
+        } catch (RuntimeException e) {
+            this.plugin.getBootstrap().getLogger().error("Failed to delete old ledger entries", e);
+        }
+    }
+
+    /**
+     * Also the scope that set it, closing it restores the previous cause.
+     */
+    private record Page(UUID uniqueId, @Nullable String currency, int number, int size) {
+        Page previous() {
+            return new Page(this.uniqueId, this.currency, this.number - 1, this.size);
+        }
+
+        Page next() {
+            return new Page(this.uniqueId, this.currency, this.number + 1, this.size);
+        }
+    }
+
+    private final class Cause implements Scope {
+        private final @Nullable UUID actor;
+        private final String source;
+        private final @Nullable Cause previous;
+
+        private Cause(@Nullable UUID actor, String source, @Nullable Cause previous) {
+            this.actor = actor;
+            this.source = source;
+            this.previous = previous;
+        }
+
+        private @Nullable UUID actor() {
+            return this.actor;
+        }
+
+        private String source() {
+            return this.source;
+        }
+
+        @Override
+        public void close() {
+            if (this.previous == null) {
+                StandardLedgerManager.this.cause.remove();
+            } else {
+                StandardLedgerManager.this.cause.set(this.previous);
+            }
+        }
+    }
+}
@@ -1,21 +1,34 @@
 package dev.xhyrom.lighteco.common.manager.user;
 
 import dev.xhyrom.lighteco.common.manager.ConcurrentManager;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
 import dev.xhyrom.lighteco.common.model.user.User;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class StandardUserManager extends ConcurrentManager<UUID, User> implements UserManager {
     private final LightEcoPlugin plugin;
     @Getter
     private final UserHousekeeper housekeeper;
+    @Getter
+    private final UserLocks locks;
+
+    // lower case username -> unique id, of loaded users
+    private final Map<String, UUID> usernames = new ConcurrentHashMap<>();
 
     public StandardUserManager(LightEcoPlugin plugin) {
         this.plugin = plugin;
+        this.locks = new UserLocks(this.plugin.getConfig().lockTimeout);
         this.housekeeper = new UserHousekeeper(plugin, this, UserHousekeeper.timeoutSettings(
                 this.plugin.getConfig().housekeeper.expireAfterWrite,
                 this.plugin.getConfig().housekeeper.expireAfterWriteUnit
@@ -47,6 +60,70 @@ public class StandardUserManager extends ConcurrentManager<UUID, User> implement
         return this.plugin.getStorage().loadUser(uniqueId, username);
     }
 
+    @Override
+    public CompletableFuture<Collection<User>> loadUsers(Collection<UUID> uniqueIds) {
+        for (UUID uniqueId : uniqueIds) {
+            this.plugin.getUserManager().getHousekeeper().registerUsage(uniqueId);
+        }
+
+        return this.plugin.getStorage().loadUsers(uniqueIds);
+    }
+
+    @Override
+    public void unload(UUID uniqueId) {
+        User user = this.map.remove(uniqueId);
+        if (user != null && user.getUsername() != null) {
+            this.usernames.remove(user.getUsername().toLowerCase(Locale.ROOT), uniqueId);
+        }
+    }
+
+    @Override
+    public void updateUsername(User user, @Nullable String previous) {
+        if (previous != null) {
+            this.usernames.remove(previous.toLowerCase(Locale.ROOT), user.getUniqueId());
+        }
+
+        if (user.getUsername() != null) {
+            this.usernames.put(user.getUsername().toLowerCase(Locale.ROOT), user.getUniqueId());
+        }
+
+        this.plugin.getLeaderboardManager().updateUsername(user.getUniqueId(), user.getUsername());
+    }
+
+    @Override
+    public @Nullable UUID getUniqueId(String username) {
+        return this.usernames.get(username.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public CompletableFuture<UUID> lookupUniqueId(String username) {
+        UUID uniqueId = getUniqueId(username);
+        if (uniqueId != null) {
+            return CompletableFuture.completedFuture(uniqueId);
+        }
+
+        return this.plugin.getStorage().lookupUniqueId(username);
+    }
+
+    @Override
+    public boolean transfer(User from, User to, Currency currency, BigDecimal amount, BigDecimal tax) {
+        if (from.getUniqueId().equals(to.getUniqueId())) {
+            throw new IllegalArgumentException("Cannot transfer to the same user");
+        }
+
+        if (amount.signum() < 0 || tax.signum() < 0 || tax.compareTo(amount) > 0) {
+            throw new IllegalArgumentException("Tax must be between zero and the amount");
+        }
+
+        long minorAmount = currency.toMinorUnits(amount);
+        long minorTax = currency.toMinorUnits(tax);
+
+        return this.locks.call(
+                () -> from.transfer(currency, to, minorAmount, minorAmount - minorTax),
+                from.getUniqueId(), to.getUniqueId()
+        );
+    }
+
     @Override
     public CompletableFuture<Void> saveUser(User user) {
        return this.plugin.getStorage().saveUser(user.getProxy());
@@ -0,0 +1,164 @@
+package dev.xhyrom.lighteco.common.manager.user;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes economy operations per user.
+ * <p>
+ *     Users are hashed to a fixed number of lock stripes, so operations on the same user wait for each other
+ *     while operations on different users (almost always) run in parallel.
+ *     Locks are reentrant and always acquired in stripe order, so locking several users can't deadlock.
+ * </p>
+ * <p>
+ *     Locking a single user allocates nothing, the stripe itself is the {@link Hold} releasing it.
+ * </p>
+ */
+public class UserLocks {
+    private static final int STRIPES = 1024;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long timeout;
+
+    /**
+     * @param timeout how long to wait for a lock, in milliseconds
+     */
+    public UserLocks(long timeout) {
+        this.timeout = timeout;
+
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Locks a single user.
+     *
+     * @return the held lock to close, or null if it couldn't be acquired in time
+     */
+    public @Nullable Hold tryLock(UUID uniqueId) {
+        return this.tryLock(index(uniqueId));
+    }
+
+    /**
+     * Locks the given users, null unique ids (e.g. console) are skipped.
+     *
+     * @return the held locks to close, or null if they couldn't be acquired in time
+     */
+    public @Nullable Hold tryLock(UUID... uniqueIds) {
+        int[] indexes = new int[uniqueIds.length];
+        int count = 0;
+
+        for (UUID uniqueId : uniqueIds) {
+            if (uniqueId != null)
+                indexes[count++] = index(uniqueId);
+        }
+
+        if (count == 0)
+            return Hold.NONE;
+
+        if (count == 1)
+            return this.tryLock(indexes[0]);
+
+        // stripe order, users sharing a stripe lock it once
+        Arrays.sort(indexes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i])
+                indexes[distinct++] = indexes[i];
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        Stripe[] held = new Stripe[distinct];
+        int locked = 0;
+
+        try {
+            for (; locked < distinct; locked++) {
+                Stripe stripe = this.stripes[indexes[locked]];
+                if (!stripe.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    unlock(held, locked);
+                    return null;
+                }
+
+                held[locked] = stripe;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unlock(held, locked);
+            return null;
+        }
+
+        return () -> unlock(held, held.length);
+    }
+
+    private @Nullable Hold tryLock(int index) {
+        Stripe stripe = this.stripes[index];
+
+        try {
+            return stripe.tryLock(this.timeout, TimeUnit.MILLISECONDS) ? stripe : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Locks a single user, like {@link #tryLock(UUID)}.
+     *
+     * @throws IllegalStateException if the lock couldn't be acquired in time
+     */
+    public Hold lock(UUID uniqueId) throws IllegalStateException {
+        Hold hold = this.tryLock(uniqueId);
+        if (hold == null) {
+            throw new IllegalStateException("Another operation on the user is taking too long");
+        }
+
+        return hold;
+    }
+
+    /**
+     * Runs the operation while holding the locks of the given users.
+     *
+     * @throws IllegalStateException if the locks couldn't be acquired in time
+     */
+    public <T> T call(Supplier<T> operation, UUID... uniqueIds) throws IllegalStateException {
+        Hold hold = this.tryLock(uniqueIds);
+        if (hold == null) {
+            throw new IllegalStateException("Another operation on the user is taking too long");
+        }
+
+        try (hold) {
+            return operation.get();
+        }
+    }
+
+    private static int index(UUID uniqueId) {
+        int hash = uniqueId.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static void unlock(Stripe[] held, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            held[i].unlock();
+        }
+    }
+
+    public interface Hold extends AutoCloseable {
+        Hold NONE = () -> {};
+
+        @Override
+        void close();
+    }
+
+    private static final class Stripe extends ReentrantLock implements Hold {
+        @Override
+        public void close() {
+            this.unlock();
+        }
+    }
+}
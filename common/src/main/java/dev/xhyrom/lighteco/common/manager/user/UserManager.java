@@ -1,17 +1,52 @@
 package dev.xhyrom.lighteco.common.manager.user;
 
 import dev.xhyrom.lighteco.common.manager.Manager;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
 import dev.xhyrom.lighteco.common.model.user.User;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public interface UserManager extends Manager<UUID, User> {
     UserHousekeeper getHousekeeper();
 
+    /**
+     * Serializes operations on the same user, see {@link UserLocks}.
+     */
+    UserLocks getLocks();
+
     CompletableFuture<Void> saveUser(User user);
     CompletableFuture<Void> saveUsers(User... users);
 
     CompletableFuture<User> loadUser(UUID uniqueId);
     CompletableFuture<User> loadUser(UUID uniqueId, String username);
+    CompletableFuture<Collection<User>> loadUsers(Collection<UUID> uniqueIds);
+
+    /**
+     * Called by {@link User#setUsername(String)} to keep the username index up to date.
+     */
+    void updateUsername(User user, @Nullable String previous);
+
+    /**
+     * Resolves a username of a loaded user, case-insensitive.
+     */
+    @Nullable UUID getUniqueId(String username);
+
+    /**
+     * Resolves a username from loaded users first, then from storage.
+     */
+    CompletableFuture<UUID> lookupUniqueId(String username);
+
+    /**
+     * Moves money between two users, see {@link User#transfer(Currency, User, long, long)}.
+     *
+     * @param amount the amount taken from the sender
+     * @param tax the part of the amount the receiver doesn't get
+     * @return true if the money was moved, false if the sender doesn't have enough
+     * @throws IllegalStateException if one of the users is locked for too long
+     */
+    boolean transfer(User from, User to, Currency currency, BigDecimal amount, BigDecimal tax) throws IllegalArgumentException, IllegalStateException;
 }
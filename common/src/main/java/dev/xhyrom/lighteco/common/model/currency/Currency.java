@@ -1,15 +1,40 @@
 package dev.xhyrom.lighteco.common.model.currency;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 
 @Getter
 public class Currency {
     private final dev.xhyrom.lighteco.api.model.currency.Currency proxy;
 
+    /**
+     * Dense index assigned on registration, used to address per-currency user state.
+     */
+    @Setter
+    private int ordinal = -1;
+
+    @Getter(AccessLevel.NONE)
+    private final int fractionalDigits;
+
+    /**
+     * Default balance in minor units.
+     */
+    private final long defaultMinorBalance;
+
+    /**
+     * The identifier in UTF-8, cached for the balance journal. Shared, don't modify it.
+     */
+    private final byte[] encodedIdentifier;
+
     public Currency(dev.xhyrom.lighteco.api.model.currency.Currency proxy) {
         this.proxy = proxy;
+        this.fractionalDigits = proxy.fractionalDigits();
+        this.defaultMinorBalance = MinorUnits.of(proxy.getDefaultBalance(), this.fractionalDigits);
+        this.encodedIdentifier = proxy.getIdentifier().getBytes(StandardCharsets.UTF_8);
     }
 
     public String getIdentifier() {
@@ -33,6 +58,14 @@ public class Currency {
     }
 
     public int fractionalDigits() {
-        return proxy.fractionalDigits();
+        return fractionalDigits;
+    }
+
+    public long toMinorUnits(BigDecimal amount) {
+        return MinorUnits.of(amount, this.fractionalDigits);
+    }
+
+    public BigDecimal fromMinorUnits(long minorUnits) {
+        return MinorUnits.toBigDecimal(minorUnits, this.fractionalDigits);
     }
 }
@@ -0,0 +1,45 @@
+package dev.xhyrom.lighteco.common.model.currency;
+
+import lombok.experimental.UtilityClass;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between amounts and minor units (e.g. cents), amounts scaled by the fractional digits of a currency.
+ * <p>
+ *     Balances are kept as minor units internally, {@link BigDecimal} is only used where amounts enter or leave.
+ * </p>
+ */
+@UtilityClass
+public class MinorUnits {
+    /**
+     * Converts an amount, extra fractional digits are dropped.
+     *
+     * @throws IllegalArgumentException if the amount doesn't fit
+     */
+    public long of(BigDecimal amount, int fractionalDigits) {
+        try {
+            return amount.setScale(fractionalDigits, RoundingMode.DOWN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount is out of range", e);
+        }
+    }
+
+    public BigDecimal toBigDecimal(long minorUnits, int fractionalDigits) {
+        return BigDecimal.valueOf(minorUnits, fractionalDigits);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the result doesn't fit
+     */
+    public long add(long a, long b) {
+        long result = a + b;
+        // both operands have the same sign and the result doesn't
+        if (((a ^ result) & (b ^ result)) < 0) {
+            throw new IllegalArgumentException("Balance is out of range");
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,205 @@
+package dev.xhyrom.lighteco.common.model.leaderboard;
+
+import dev.xhyrom.lighteco.api.model.leaderboard.LeaderboardEntry;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.User;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ranking of all users with a balance in one currency.
+ * <p>
+ *     Seeded once from storage, then kept up to date by balance changes,
+ *     which are queued and applied in the background.
+ *     Users with zero balance are not ranked, same as they are not stored.
+ * </p>
+ */
+public class Leaderboard {
+    @Getter
+    private final Currency currency;
+
+    private final RankingTree tree = new RankingTree();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // users changed since the last drain
+    private final Map<UUID, User> changed = new ConcurrentHashMap<>();
+
+    // users changed while seeding, storage has an older balance for them
+    private Set<UUID> changedWhileSeeding = new HashSet<>();
+
+    @Getter
+    private volatile boolean ready;
+
+    public Leaderboard(Currency currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * Queues a user to be ranked again, applied by the next {@link #drain()}.
+     * <p>
+     *     Called on every balance change, so it takes no lock.
+     * </p>
+     */
+    public void update(User user) {
+        this.changed.put(user.getUniqueId(), user);
+    }
+
+    /**
+     * Ranks the users changed since the last drain.
+     * <p>
+     *     A user is taken off the queue before their balance is read, so a change racing
+     *     with the drain queues them again and the latest balance is always ranked.
+     * </p>
+     */
+    public void drain() {
+        if (this.changed.isEmpty()) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            Iterator<User> iterator = this.changed.values().iterator();
+            while (iterator.hasNext()) {
+                User user = iterator.next();
+                iterator.remove();
+
+                UUID uniqueId = user.getUniqueId();
+                long balance = user.getMinorBalance(this.currency);
+
+                if (this.changedWhileSeeding != null) {
+                    this.changedWhileSeeding.add(uniqueId);
+                }
+
+                if (balance == 0) {
+                    this.tree.remove(uniqueId);
+                } else {
+                    this.tree.put(uniqueId, user.getUsername(), balance);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a balance read from storage.
+     * <p>
+     *     Users that changed since seeding started are already up to date and are skipped.
+     *     Ignored after {@link #markReady()}.
+     * </p>
+     */
+    public void seed(UUID uniqueId, String username, BigDecimal balance) {
+        long minorUnits = this.currency.toMinorUnits(balance);
+        if (minorUnits == 0) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.changedWhileSeeding != null && !this.changedWhileSeeding.contains(uniqueId)) {
+                this.tree.put(uniqueId, username, minorUnits);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything seeded so far after seeding failed, so it can start over.
+     * <p>
+     *     Users changed until now are dropped too, loaded ones are ranked again once ready.
+     * </p>
+     */
+    public void reset() {
+        this.lock.writeLock().lock();
+        try {
+            this.tree.clear();
+            this.changedWhileSeeding = new HashSet<>();
+            this.ready = false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void markReady() {
+        this.lock.writeLock().lock();
+        try {
+            this.changedWhileSeeding = null;
+            this.ready = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void setUsername(UUID uniqueId, String username) {
+        this.lock.writeLock().lock();
+        try {
+            this.tree.setUsername(uniqueId, username);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the rank starting at 1, or 0 if the user is not ranked
+     */
+    public int getRank(UUID uniqueId) {
+        this.lock.readLock().lock();
+        try {
+            return this.tree.rank(uniqueId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param page the page, starting at 1
+     * @param pageSize the number of entries per page
+     * @return the entries, empty if the page is out of range
+     */
+    public List<LeaderboardEntry> getPage(int page, int pageSize) {
+        if (page < 1 || pageSize < 1) {
+            return Collections.emptyList();
+        }
+
+        this.lock.readLock().lock();
+        try {
+            int from = (page - 1) * pageSize;
+            int to = Math.min(this.tree.size(), from + pageSize);
+            if (from >= to) {
+                return Collections.emptyList();
+            }
+
+            List<LeaderboardEntry> entries = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                RankingTree.Node node = this.tree.get(i);
+                entries.add(new LeaderboardEntry(i + 1, node.uniqueId, node.username, this.currency.fromMinorUnits(node.balance)));
+            }
+
+            return entries;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.tree.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package dev.xhyrom.lighteco.common.model.leaderboard;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Order statistic tree (treap) of balances in minor units, highest balance first.
+ * <p>
+ *     Every node keeps the size of its subtree, so inserts, removals,
+ *     rank lookups and lookups by position are all O(log n).
+ *     Ties are broken by unique id, so the order is stable.
+ * </p>
+ * <p>
+ *     Not thread-safe, {@link Leaderboard} guards it.
+ * </p>
+ */
+final class RankingTree {
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private Node root;
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    void put(UUID uniqueId, String username, long balance) {
+        Node node = this.nodes.get(uniqueId);
+
+        if (node == null) {
+            node = new Node(uniqueId, username, balance);
+            this.nodes.put(uniqueId, node);
+            this.root = insert(this.root, node);
+
+            return;
+        }
+
+        if (username != null) {
+            node.username = username;
+        }
+
+        if (node.balance == balance) {
+            return;
+        }
+
+        // the key changes, so the node has to move
+        this.root = erase(this.root, node);
+        node.balance = balance;
+        node.left = null;
+        node.right = null;
+        node.size = 1;
+        this.root = insert(this.root, node);
+    }
+
+    void clear() {
+        this.nodes.clear();
+        this.root = null;
+    }
+
+    void setUsername(UUID uniqueId, String username) {
+        Node node = this.nodes.get(uniqueId);
+        if (node != null) {
+            node.username = username;
+        }
+    }
+
+    void remove(UUID uniqueId) {
+        Node node = this.nodes.remove(uniqueId);
+        if (node != null) {
+            this.root = erase(this.root, node);
+        }
+    }
+
+    /**
+     * @return the rank starting at 1, or 0 if not present
+     */
+    int rank(UUID uniqueId) {
+        Node node = this.nodes.get(uniqueId);
+        if (node == null) {
+            return 0;
+        }
+
+        int rank = 0;
+        Node current = this.root;
+
+        while (current != null) {
+            int c = compare(node, current);
+
+            if (c < 0) {
+                current = current.left;
+            } else if (c > 0) {
+                rank += size(current.left) + 1;
+                current = current.right;
+            } else {
+                return rank + size(current.left) + 1;
+            }
+        }
+
+        throw new IllegalStateException("Node of " + uniqueId + " is not in the tree");
+    }
+
+    /**
+     * @param index the position starting at 0
+     * @return the node, or null if out of range
+     */
+    Node get(int index) {
+        if (index < 0 || index >= size(this.root)) {
+            return null;
+        }
+
+        Node current = this.root;
+
+        while (current != null) {
+            int leftSize = size(current.left);
+
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index == leftSize) {
+                return current;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+
+        return null;
+    }
+
+    private static Node insert(Node tree, Node node) {
+        if (tree == null) {
+            return node;
+        }
+
+        if (node.priority > tree.priority) {
+            Node[] parts = split(tree, node);
+            node.left = parts[0];
+            node.right = parts[1];
+            update(node);
+
+            return node;
+        }
+
+        if (compare(node, tree) < 0) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+
+        update(tree);
+        return tree;
+    }
+
+    private static Node erase(Node tree, Node node) {
+        if (tree == null) {
+            return null;
+        }
+
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+
+        if (compare(node, tree) < 0) {
+            tree.left = erase(tree.left, node);
+        } else {
+            tree.right = erase(tree.right, node);
+        }
+
+        update(tree);
+        return tree;
+    }
+
+    // splits into nodes ordered before the key and the rest
+    private static Node[] split(Node tree, Node key) {
+        if (tree == null) {
+            return new Node[2];
+        }
+
+        if (compare(tree, key) < 0) {
+            Node[] parts = split(tree.right, key);
+            tree.right = parts[0];
+            update(tree);
+
+            return new Node[]{tree, parts[1]};
+        }
+
+        Node[] parts = split(tree.left, key);
+        tree.left = parts[1];
+        update(tree);
+
+        return new Node[]{parts[0], tree};
+    }
+
+    // every node of left is ordered before every node of right
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+
+            return left;
+        }
+
+        right.left = merge(left, right.left);
+        update(right);
+
+        return right;
+    }
+
+    private static int compare(Node a, Node b) {
+        int c = Long.compare(b.balance, a.balance);
+        if (c != 0) {
+            return c;
+        }
+
+        return a.uniqueId.compareTo(b.uniqueId);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    static final class Node {
+        final UUID uniqueId;
+        final int priority = ThreadLocalRandom.current().nextInt();
+
+        String username;
+        long balance;
+
+        Node left;
+        Node right;
+        int size = 1;
+
+        private Node(UUID uniqueId, String username, long balance) {
+            this.uniqueId = uniqueId;
+            this.username = username;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package dev.xhyrom.lighteco.common.model.user;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Balance of a user in one currency, in minor units.
+ * <p>
+ *     Changed with compare-and-set only, so concurrent changes are never lost.
+ *     Cells are never replaced, only the array holding them grows.
+ * </p>
+ */
+final class BalanceCell {
+    /**
+     * No balance was set, the currency's default balance applies.
+     */
+    static final long UNSET = -1;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(BalanceCell.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long value = UNSET;
+
+    long get() {
+        return this.value;
+    }
+
+    long getAndSet(long value) {
+        return (long) VALUE.getAndSet(this, value);
+    }
+
+    boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+}
@@ -1,17 +1,22 @@
 package dev.xhyrom.lighteco.common.model.user;
 
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
 import dev.xhyrom.lighteco.common.api.impl.ApiUser;
-import dev.xhyrom.lighteco.common.cache.RedisBackedMap;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.currency.MinorUnits;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import dev.xhyrom.lighteco.common.task.UserSaveTask;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Getter
 public class User {
@@ -24,13 +29,36 @@ public class User {
     private final UUID uniqueId;
 
     @Getter
-    @Setter
-    private boolean dirty = false;
-    @Getter
-    @Setter
-    private String username;
+    private volatile String username;
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean usernameDirty = new AtomicBoolean();
+
+    /**
+     * Balances in minor units, indexed by {@link Currency#getOrdinal()}.
+     * Grows when currencies are registered later.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile BalanceCell[] balances = new BalanceCell[0];
+
+    /**
+     * Currencies with unsaved balance changes, indexed by {@link Currency#getOrdinal()}.
+     * Also guards {@link #version} and changes of {@link #usernameDirty}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final BitSet dirtyCurrencies = new BitSet();
 
-    private final HashMap<Currency, BigDecimal> balances = new RedisBackedMap<>();
+    /**
+     * Incremented on every change that has to be saved, see {@link #snapshot()}.
+     */
+    @Getter(AccessLevel.NONE)
+    private long version;
+
+    /**
+     * Whether the user is waiting in the save queue, see {@link UserSaveTask}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean queued = new AtomicBoolean();
 
     public User(LightEcoPlugin plugin, UUID uniqueId) {
         this(plugin, uniqueId, null);
@@ -42,8 +70,37 @@ public class User {
         this.username = username;
     }
 
+    public void setUsername(@Nullable String username) {
+        this.setUsername(username, false);
+    }
+
+    /**
+     * @param force whether the username comes from storage, so it doesn't have to be saved again
+     */
+    public void setUsername(@Nullable String username, boolean force) {
+        String previous = this.username;
+        if (Objects.equals(previous, username))
+            return;
+
+        this.username = username;
+        if (!force)
+            this.markUsernameDirty();
+
+        this.plugin.getUserManager().updateUsername(this, previous);
+    }
+
     public BigDecimal getBalance(@NonNull Currency currency) {
-        return balances.getOrDefault(currency, currency.getDefaultBalance());
+        return currency.fromMinorUnits(this.getMinorBalance(currency));
+    }
+
+    /**
+     * @return the balance in minor units, see {@link MinorUnits}
+     */
+    public long getMinorBalance(@NonNull Currency currency) {
+        BalanceCell[] balances = this.balances;
+        int ordinal = currency.getOrdinal();
+
+        return effective(currency, ordinal < balances.length ? balances[ordinal].get() : BalanceCell.UNSET);
     }
 
     public void setBalance(@NonNull Currency currency, @NonNull BigDecimal balance) {
@@ -51,35 +108,366 @@ public class User {
     }
 
     public void setBalance(@NonNull Currency currency, @NonNull BigDecimal balance, boolean force) {
-        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+        if (balance.signum() < 0) {
             throw new IllegalArgumentException("Balance cannot be negative");
         }
 
-        balance = balance.setScale(currency.fractionalDigits(), RoundingMode.DOWN);
-        balances.put(currency, balance);
+        this.setMinorBalance(currency, currency.toMinorUnits(balance), force);
+    }
+
+    public void setMinorBalance(@NonNull Currency currency, long balance, boolean force) {
+        if (balance < 0) {
+            throw new IllegalArgumentException("Balance cannot be negative");
+        }
 
+        long previous = this.cell(currency).getAndSet(balance);
+        this.changed(currency, force);
+
+        // forced balances come from storage, they are not changes
         if (!force)
-            this.setDirty(true);
+            this.record(currency, LedgerEntry.Type.SET, balance - effective(currency, previous), balance, null);
+    }
+
+    /**
+     * Sets the balance only if it's currently the expected one.
+     *
+     * @return true if the balance was set
+     */
+    public boolean compareAndSetBalance(@NonNull Currency currency, @NonNull BigDecimal expected, @NonNull BigDecimal balance) {
+        if (balance.signum() < 0) {
+            throw new IllegalArgumentException("Balance cannot be negative");
+        }
+
+        return this.compareAndSetMinorBalance(currency, currency.toMinorUnits(expected), currency.toMinorUnits(balance));
+    }
+
+    public boolean compareAndSetMinorBalance(@NonNull Currency currency, long expected, long balance) {
+        if (balance < 0) {
+            throw new IllegalArgumentException("Balance cannot be negative");
+        }
+
+        BalanceCell cell = this.cell(currency);
+
+        while (true) {
+            long current = cell.get();
+            if (effective(currency, current) != expected)
+                return false;
+
+            if (cell.compareAndSet(current, balance)) {
+                this.changed(currency, false);
+                this.record(currency, LedgerEntry.Type.SET, balance - expected, balance, null);
+                return true;
+            }
+        }
+    }
+
+    private BalanceCell cell(Currency currency) {
+        int ordinal = currency.getOrdinal();
+
+        BalanceCell[] balances = this.balances;
+        if (ordinal < balances.length)
+            return balances[ordinal];
+
+        synchronized (this) {
+            if (ordinal >= this.balances.length) {
+                BalanceCell[] grown = Arrays.copyOf(this.balances, ordinal + 1);
+                for (int i = this.balances.length; i < grown.length; i++) {
+                    grown[i] = new BalanceCell();
+                }
+
+                this.balances = grown;
+            }
+
+            return this.balances[ordinal];
+        }
+    }
+
+    private static long effective(Currency currency, long balance) {
+        return balance == BalanceCell.UNSET ? currency.getDefaultMinorBalance() : balance;
+    }
+
+    private void record(Currency currency, LedgerEntry.Type type, long amount, long balance, @Nullable UUID other) {
+        this.plugin.getLedgerManager().record(this, currency, type, amount, balance, other);
+    }
+
+    private void changed(Currency currency, boolean force) {
+        this.plugin.getLeaderboardManager().update(this, currency);
+
+        if (!force) {
+            this.markDirty(currency);
+            this.plugin.getUserSaveTask().journal(this, currency);
+        }
+    }
+
+    public boolean isDirty() {
+        if (this.usernameDirty.get())
+            return true;
+
+        synchronized (this.dirtyCurrencies) {
+            return !this.dirtyCurrencies.isEmpty();
+        }
+    }
+
+    public boolean isDirty(@NonNull Currency currency) {
+        synchronized (this.dirtyCurrencies) {
+            return this.dirtyCurrencies.get(currency.getOrdinal());
+        }
+    }
+
+    public void markDirty(@NonNull Currency currency) {
+        synchronized (this.dirtyCurrencies) {
+            this.dirtyCurrencies.set(currency.getOrdinal());
+            this.version++;
+        }
+
+        this.queueSave();
+    }
+
+    public void markUsernameDirty() {
+        synchronized (this.dirtyCurrencies) {
+            this.usernameDirty.set(true);
+            this.version++;
+        }
+
+        this.queueSave();
+    }
+
+    /**
+     * Captures the unsaved changes, called by storage right before they are written.
+     * <p>
+     *     Nothing is cleared here, see {@link #saved(UserSnapshot)}.
+     * </p>
+     */
+    public UserSnapshot snapshot() {
+        BitSet currencies;
+        long version;
+        boolean usernameChanged;
+
+        synchronized (this.dirtyCurrencies) {
+            currencies = (BitSet) this.dirtyCurrencies.clone();
+            version = this.version;
+            usernameChanged = this.usernameDirty.get();
+        }
+
+        // balance cells are updated before they are marked dirty,
+        // so a value read here is either the one that got the currency marked or a newer one
+        long[] balances = new long[currencies.length()];
+        for (int ordinal = currencies.nextSetBit(0); ordinal >= 0; ordinal = currencies.nextSetBit(ordinal + 1)) {
+            Currency currency = this.plugin.getCurrencyManager().getByOrdinal(ordinal);
+            if (currency == null) {
+                currencies.clear(ordinal);
+                continue;
+            }
+
+            balances[ordinal] = this.getMinorBalance(currency);
+        }
+
+        return new UserSnapshot(version, currencies, balances, usernameChanged, this.username);
+    }
+
+    /**
+     * Clears the changes the snapshot persisted, called by storage after a successful commit.
+     * <p>
+     *     If nothing changed since the snapshot, everything in it is clean.
+     *     Otherwise only currencies still holding the saved balance (and the saved username) are,
+     *     the rest stays dirty for the next save.
+     * </p>
+     */
+    public void saved(@NonNull UserSnapshot snapshot) {
+        synchronized (this.dirtyCurrencies) {
+            if (this.version == snapshot.version()) {
+                this.dirtyCurrencies.andNot(snapshot.currencies());
+                if (snapshot.usernameChanged())
+                    this.usernameDirty.set(false);
+
+                return;
+            }
+
+            BitSet currencies = snapshot.currencies();
+            for (int ordinal = currencies.nextSetBit(0); ordinal >= 0; ordinal = currencies.nextSetBit(ordinal + 1)) {
+                Currency currency = this.plugin.getCurrencyManager().getByOrdinal(ordinal);
+                if (currency != null && this.getMinorBalance(currency) == snapshot.balances()[ordinal])
+                    this.dirtyCurrencies.clear(ordinal);
+            }
+
+            if (snapshot.usernameChanged() && Objects.equals(this.username, snapshot.username()))
+                this.usernameDirty.set(false);
+        }
+    }
+
+    /**
+     * Called by {@link UserSaveTask} when a save failed, the changes are still dirty and get saved again later.
+     */
+    public void saveFailed() {
+        this.queueSave();
+    }
+
+    private void queueSave() {
+        if (this.queued.compareAndSet(false, true))
+            this.plugin.getUserSaveTask().enqueue(this);
+    }
+
+    /**
+     * Called by {@link UserSaveTask} when it takes the user from the queue,
+     * so the next change queues the user again.
+     */
+    public void dequeued() {
+        this.queued.set(false);
     }
 
+
     public void deposit(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException {
-        if (amount.compareTo(BigDecimal.ZERO) < 0) {
+        if (amount.signum() < 0) {
             throw new IllegalArgumentException("Amount cannot be negative");
         }
 
-        this.setBalance(currency, this.getBalance(currency).add(amount));
+        this.deposit(currency, currency.toMinorUnits(amount));
+    }
+
+    /**
+     * @return the new balance in minor units
+     */
+    public long deposit(@NonNull Currency currency, long amount) throws IllegalArgumentException {
+        long balance = this.add(currency, amount);
+        this.record(currency, LedgerEntry.Type.DEPOSIT, amount, balance, null);
+
+        return balance;
+    }
+
+    private long add(Currency currency, long amount) throws IllegalArgumentException {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative");
+        }
+
+        BalanceCell cell = this.cell(currency);
+
+        while (true) {
+            long current = cell.get();
+            long balance = MinorUnits.add(effective(currency, current), amount);
+
+            if (cell.compareAndSet(current, balance)) {
+                this.changed(currency, false);
+                return balance;
+            }
+        }
     }
 
     public void withdraw(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException {
-        if (amount.compareTo(BigDecimal.ZERO) < 0) {
+        if (amount.signum() < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative");
+        }
+
+        this.withdraw(currency, currency.toMinorUnits(amount));
+    }
+
+    /**
+     * Withdraws the amount, or everything if the balance is lower.
+     *
+     * @return the new balance in minor units
+     */
+    public long withdraw(@NonNull Currency currency, long amount) throws IllegalArgumentException {
+        if (amount < 0) {
             throw new IllegalArgumentException("Amount cannot be negative");
         }
 
-        if (this.getBalance(currency).compareTo(amount) < 0) {
-            // Withdraw all
-            amount = this.getBalance(currency);
+        BalanceCell cell = this.cell(currency);
+
+        while (true) {
+            long current = cell.get();
+            long previous = effective(currency, current);
+            long balance = Math.max(0, previous - amount);
+
+            if (cell.compareAndSet(current, balance)) {
+                this.changed(currency, false);
+                // what was actually taken, so the ledger adds up to the balance
+                this.record(currency, LedgerEntry.Type.WITHDRAW, previous - balance, balance, null);
+                return balance;
+            }
+        }
+    }
+
+    public boolean tryWithdraw(@NonNull Currency currency, @NonNull BigDecimal amount) throws IllegalArgumentException {
+        if (amount.signum() < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative");
         }
 
-        this.setBalance(currency, this.getBalance(currency).subtract(amount));
+        return this.tryWithdraw(currency, currency.toMinorUnits(amount));
+    }
+
+    /**
+     * Withdraws the amount only if the balance is high enough.
+     *
+     * @return true if the amount was withdrawn
+     */
+    public boolean tryWithdraw(@NonNull Currency currency, long amount) throws IllegalArgumentException {
+        long balance = this.take(currency, amount);
+        if (balance < 0)
+            return false;
+
+        this.record(currency, LedgerEntry.Type.WITHDRAW, amount, balance, null);
+        return true;
+    }
+
+    /**
+     * @return the new balance in minor units, or -1 if the balance is too low
+     */
+    private long take(Currency currency, long amount) throws IllegalArgumentException {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative");
+        }
+
+        BalanceCell cell = this.cell(currency);
+
+        while (true) {
+            long current = cell.get();
+            long balance = effective(currency, current);
+            if (balance < amount)
+                return -1;
+
+            if (cell.compareAndSet(current, balance - amount)) {
+                this.changed(currency, false);
+                return balance - amount;
+            }
+        }
+    }
+
+    /**
+     * Moves money to another user, only if this user has enough.
+     * <p>
+     *     The withdrawal and the deposit are separate atomic steps, there's no lock over both.
+     *     Money is never created or lost: if the deposit fails, the amount is given back.
+     * </p>
+     * <p>
+     *     Recorded in the ledger as a payment and a tax on this user, and a receipt on the target.
+     * </p>
+     *
+     * @param amount the amount withdrawn from this user, in minor units
+     * @param received the amount deposited to the target, in minor units (e.g. the amount after tax)
+     * @return true if the money was moved, false if this user doesn't have enough
+     */
+    public boolean transfer(@NonNull Currency currency, @NonNull User target, long amount, long received) throws IllegalArgumentException {
+        if (received < 0 || received > amount) {
+            throw new IllegalArgumentException("Received amount must be between zero and the amount");
+        }
+
+        long balance = this.take(currency, amount);
+        if (balance < 0)
+            return false;
+
+        long targetBalance;
+        try {
+            targetBalance = target.add(currency, received);
+        } catch (IllegalArgumentException e) {
+            // nothing happened as far as the ledger is concerned
+            this.add(currency, amount);
+            throw e;
+        }
+
+        this.record(currency, LedgerEntry.Type.PAY, received, balance, target.getUniqueId());
+        if (amount > received)
+            this.record(currency, LedgerEntry.Type.TAX, amount - received, balance, target.getUniqueId());
+
+        target.record(currency, LedgerEntry.Type.RECEIVE, received, targetBalance, this.uniqueId);
+        return true;
     }
 }
@@ -0,0 +1,25 @@
+package dev.xhyrom.lighteco.common.model.user;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * Unsaved changes of a user at one point in time, see {@link User#snapshot()}.
+ * <p>
+ *     Storage writes the snapshot instead of reading the live user,
+ *     so a save always persists values that existed together, no matter what happens during it.
+ *     Must not be modified.
+ * </p>
+ *
+ * @param version the change counter of the user when the snapshot was taken
+ * @param currencies the changed currencies, indexed by ordinal
+ * @param balances the balances in minor units, indexed by ordinal, only set for the changed currencies
+ * @param usernameChanged whether the username has to be saved
+ * @param username the username
+ */
+public record UserSnapshot(long version, BitSet currencies, long[] balances, boolean usernameChanged, @Nullable String username) {
+    public boolean isEmpty() {
+        return this.currencies.isEmpty() && !this.usernameChanged;
+    }
+}
@@ -6,6 +6,10 @@ import dev.xhyrom.lighteco.common.api.LightEcoApi;
 import dev.xhyrom.lighteco.common.config.Config;
 import dev.xhyrom.lighteco.common.dependencies.DependencyManager;
 import dev.xhyrom.lighteco.common.dependencies.DependencyManagerImpl;
+import dev.xhyrom.lighteco.common.manager.leaderboard.LeaderboardManager;
+import dev.xhyrom.lighteco.common.manager.leaderboard.StandardLeaderboardManager;
+import dev.xhyrom.lighteco.common.manager.ledger.LedgerManager;
+import dev.xhyrom.lighteco.common.manager.ledger.StandardLedgerManager;
 import dev.xhyrom.lighteco.common.storage.Storage;
 import dev.xhyrom.lighteco.common.storage.StorageFactory;
 import dev.xhyrom.lighteco.common.task.UserSaveTask;
@@ -25,6 +29,9 @@ public abstract class AbstractLightEcoPlugin implements LightEcoPlugin {
     private Storage storage;
     private LightEcoApi api;
 
+    private LeaderboardManager leaderboardManager;
+    private LedgerManager ledgerManager;
+
     private UserSaveTask userSaveTask;
 
     public final void load() {
@@ -46,6 +53,16 @@ public abstract class AbstractLightEcoPlugin implements LightEcoPlugin {
 
         this.storage = factory.get();
 
+        // record balance changes from the start, restored unsaved balances included
+        this.ledgerManager = new StandardLedgerManager(this);
+
+        // users queue themselves for saving as soon as they change
+        this.userSaveTask = new UserSaveTask(this);
+        this.userSaveTask.load();
+
+        // setup leaderboards, before currencies get registered
+        this.leaderboardManager = new StandardLeaderboardManager(this);
+
         // register listeners
         this.registerListeners();
 
@@ -60,13 +77,15 @@ public abstract class AbstractLightEcoPlugin implements LightEcoPlugin {
         LightEcoProvider.set(this.api);
         this.registerApiOnPlatform(this.api);
 
-        this.userSaveTask = new UserSaveTask(this);
         this.getBootstrap().getScheduler().asyncRepeating(userSaveTask, this.config.saveInterval, TimeUnit.SECONDS);
     }
 
     public final void disable() {
-        // save dirty users synchronously
-        this.userSaveTask.run();
+        // save queued users synchronously
+        this.userSaveTask.shutdown();
+
+        // write the remaining ledger entries while storage is still open
+        this.ledgerManager.shutdown();
 
         // remove platform hooks
         this.removePlatformHooks();
@@ -6,9 +6,12 @@ import dev.xhyrom.lighteco.common.config.Config;
 import dev.xhyrom.lighteco.common.dependencies.DependencyManager;
 import dev.xhyrom.lighteco.common.manager.command.CommandManager;
 import dev.xhyrom.lighteco.common.manager.currency.CurrencyManager;
+import dev.xhyrom.lighteco.common.manager.leaderboard.LeaderboardManager;
+import dev.xhyrom.lighteco.common.manager.ledger.LedgerManager;
 import dev.xhyrom.lighteco.common.manager.user.UserManager;
 import dev.xhyrom.lighteco.common.plugin.bootstrap.LightEcoBootstrap;
 import dev.xhyrom.lighteco.common.storage.Storage;
+import dev.xhyrom.lighteco.common.task.UserSaveTask;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 public interface LightEcoPlugin {
@@ -20,9 +23,13 @@ public interface LightEcoPlugin {
     @NonNull UserManager getUserManager();
     @NonNull CurrencyManager getCurrencyManager();
     @NonNull CommandManager getCommandManager();
+    @NonNull LeaderboardManager getLeaderboardManager();
+    @NonNull LedgerManager getLedgerManager();
     @NonNull ContextManager<?> getContextManager();
 
     @NonNull DependencyManager getDependencyManager();
 
     @NonNull Storage getStorage();
+
+    @NonNull UserSaveTask getUserSaveTask();
 }
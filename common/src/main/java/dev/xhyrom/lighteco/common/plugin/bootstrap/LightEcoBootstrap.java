@@ -12,6 +12,12 @@ public interface LightEcoBootstrap {
     Object getLoader();
     PluginLogger getLogger();
     SchedulerAdapter getScheduler();
+
+    /**
+     * Whether the current thread is the server thread, which must never block on storage.
+     */
+    boolean isPrimaryThread();
+
     Path getDataDirectory();
     boolean isPlayerOnline(UUID uniqueId);
     List<UUID> getOnlinePlayers();
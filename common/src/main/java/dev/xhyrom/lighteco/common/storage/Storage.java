@@ -1,51 +1,93 @@
 package dev.xhyrom.lighteco.common.storage;
 
 import dev.xhyrom.lighteco.api.model.currency.Currency;
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
 import dev.xhyrom.lighteco.api.storage.StorageProvider;
+import dev.xhyrom.lighteco.common.api.impl.ApiUser;
+import dev.xhyrom.lighteco.common.config.storage.StorageConfig;
 import dev.xhyrom.lighteco.common.model.user.User;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import dev.xhyrom.lighteco.common.util.ThrowableRunnable;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class Storage {
     private final LightEcoPlugin plugin;
     private final StorageProvider provider;
+    private final ExecutorService executor;
+    private final Map<UUID, CompletableFuture<User>> loading = new ConcurrentHashMap<>();
 
     public Storage(LightEcoPlugin plugin, StorageProvider provider) {
         this.plugin = plugin;
         this.provider = provider;
+        this.executor = createExecutor(plugin.getConfig().storage);
+    }
+
+    private ExecutorService createExecutor(StorageConfig config) {
+        if (config.executor == StorageExecutorType.VIRTUAL) {
+            ExecutorService executor = StorageExecutors.virtual(config.workers, config.data.maximumPoolSize, this::mayWait);
+            if (executor != null) {
+                return executor;
+            }
+
+            this.plugin.getBootstrap().getLogger().warn("Virtual threads are not available on Java %s, falling back to platform threads", Runtime.version().feature());
+        }
+
+        return StorageExecutors.platform(config.workers, this::mayWait);
+    }
+
+    // the server thread fails fast on a full queue instead of stalling the tick
+    private boolean mayWait() {
+        return !this.plugin.getBootstrap().isPrimaryThread();
     }
 
     private <T> CompletableFuture<T> future(Callable<T> callable) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return callable.call();
-            } catch (Exception e) {
-                if (e instanceof RuntimeException r) {
-                    throw r;
-                }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return callable.call();
+                } catch (Exception e) {
+                    if (e instanceof RuntimeException r) {
+                        throw r;
+                    }
 
-                throw new CompletionException(e);
-            }
-        });
+                    throw new CompletionException(e);
+                }
+            }, this.executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     private CompletableFuture<Void> future(ThrowableRunnable runnable) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                runnable.run();
-            } catch (Exception e) {
-                if (e instanceof RuntimeException r) {
-                    throw r;
-                }
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    if (e instanceof RuntimeException r) {
+                        throw r;
+                    }
 
-                throw new CompletionException(e);
-            }
-        });
+                    throw new CompletionException(e);
+                }
+            }, this.executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     public void init() {
@@ -57,6 +99,20 @@ public class Storage {
     }
 
     public void shutdown() {
+        // let queued operations (e.g. saves of players who just quit) finish first
+        this.executor.shutdown();
+
+        try {
+            long timeout = this.plugin.getConfig().storage.workers.shutdownTimeout;
+            if (!this.executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                this.plugin.getBootstrap().getLogger().warn("Storage operations did not finish in %sms, cancelling them", timeout);
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
         try {
             this.provider.shutdown();
         } catch (Exception e) {
@@ -64,18 +120,172 @@ public class Storage {
         }
     }
 
+    /**
+     * Whether the user is currently being loaded.
+     * <p>
+     *     While loading, the user may already be in the user manager without all balances.
+     * </p>
+     */
+    public boolean isLoading(UUID uniqueId) {
+        return this.loading.containsKey(uniqueId);
+    }
+
+    /**
+     * Returns the user if it's in the manager and fully loaded.
+     * <p>
+     *     Providers put users into the manager while loading them, but only after the load was registered,
+     *     and the registration is removed once it's done. So a user seen in the manager without
+     *     a registration seen afterwards has all balances applied.
+     * </p>
+     */
+    private User loaded(UUID uniqueId) {
+        User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+        if (user == null || this.loading.containsKey(uniqueId)) {
+            return null;
+        }
+
+        return user;
+    }
+
     public CompletableFuture<User> loadUser(UUID uniqueId) {
         return loadUser(uniqueId, null);
     }
 
     public CompletableFuture<User> loadUser(UUID uniqueId, String username) {
-        User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+        User user = this.loaded(uniqueId);
         if (user != null) {
             return CompletableFuture.completedFuture(user);
         }
 
-        return future(() -> this.provider.loadUser(uniqueId, username))
-                .thenApply(apiUser -> this.plugin.getUserManager().getIfLoaded(apiUser.getUniqueId()));
+        // register first, so nobody can start another load or see the user before its balances are applied
+        CompletableFuture<User> promise = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = this.loading.putIfAbsent(uniqueId, promise);
+        if (inFlight != null) {
+            return withUsername(inFlight, username);
+        }
+
+        // a load may have finished in the meantime, don't overwrite its balances with a second one
+        user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+        if (user != null) {
+            this.loading.remove(uniqueId, promise);
+            promise.complete(user);
+            return promise;
+        }
+
+        future(() -> this.provider.loadUser(uniqueId, username))
+                .thenApply(ApiUser::cast)
+                .whenComplete((loaded, throwable) -> {
+                    if (throwable == null)
+                        this.restorePending(loaded);
+
+                    this.loading.remove(uniqueId, promise);
+
+                    if (throwable != null) {
+                        promise.completeExceptionally(throwable);
+                    } else {
+                        promise.complete(loaded);
+                    }
+                });
+
+        return promise;
+    }
+
+    // before the load is unregistered, so restored balances can't overwrite changes made after it
+    private void restorePending(User user) {
+        try {
+            this.plugin.getUserSaveTask().getPendingSaveFile().loaded(user);
+        } catch (RuntimeException e) {
+            this.plugin.getBootstrap().getLogger().error("Failed to restore unsaved changes of %s", e, user.getUniqueId());
+        }
+    }
+
+    private static CompletableFuture<User> withUsername(CompletableFuture<User> future, String username) {
+        if (username == null) {
+            return future;
+        }
+
+        return future.thenApply(user -> {
+            user.setUsername(username);
+            return user;
+        });
+    }
+
+    public CompletableFuture<Collection<User>> loadUsers(Collection<UUID> uniqueIds) {
+        List<CompletableFuture<User>> futures = new ArrayList<>(uniqueIds.size());
+        Map<UUID, CompletableFuture<User>> promises = new LinkedHashMap<>();
+
+        for (UUID uniqueId : uniqueIds) {
+            if (promises.containsKey(uniqueId)) {
+                continue;
+            }
+
+            User user = this.loaded(uniqueId);
+            if (user != null) {
+                futures.add(CompletableFuture.completedFuture(user));
+                continue;
+            }
+
+            CompletableFuture<User> promise = new CompletableFuture<>();
+            CompletableFuture<User> inFlight = this.loading.putIfAbsent(uniqueId, promise);
+            if (inFlight != null) {
+                futures.add(inFlight);
+                continue;
+            }
+
+            user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+            if (user != null) {
+                this.loading.remove(uniqueId, promise);
+                promise.complete(user);
+            } else {
+                promises.put(uniqueId, promise);
+            }
+
+            futures.add(promise);
+        }
+
+        if (!promises.isEmpty()) {
+            future(() -> this.provider.loadUsers(promises.keySet()))
+                    .whenComplete((loaded, throwable) -> {
+                        if (throwable == null) {
+                            for (dev.xhyrom.lighteco.api.model.user.User apiUser : loaded) {
+                                CompletableFuture<User> promise = promises.get(apiUser.getUniqueId());
+                                if (promise == null) continue;
+
+                                User user = ApiUser.cast(apiUser);
+                                this.restorePending(user);
+
+                                this.loading.remove(apiUser.getUniqueId(), promise);
+                                promise.complete(user);
+                            }
+                        }
+
+                        // anything left over failed (or was not returned by the provider)
+                        Throwable cause = throwable != null
+                                ? throwable
+                                : new IllegalStateException("Storage provider did not return user");
+
+                        promises.forEach((uniqueId, promise) -> {
+                            if (promise.isDone()) return;
+
+                            this.loading.remove(uniqueId, promise);
+                            promise.completeExceptionally(cause);
+                        });
+                    });
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    List<User> users = new ArrayList<>(futures.size());
+                    for (CompletableFuture<User> future : futures) {
+                        users.add(future.join());
+                    }
+
+                    return users;
+                });
+    }
+
+    public CompletableFuture<UUID> lookupUniqueId(String username) {
+        return future(() -> this.provider.lookupUniqueId(username));
     }
 
     public CompletableFuture<Void> saveUser(dev.xhyrom.lighteco.api.model.user.User user) {
@@ -86,6 +296,14 @@ public class Storage {
         return future(() -> this.provider.saveUsers(users));
     }
 
+    public CompletableFuture<Void> loadBalances(Currency currency, StorageProvider.BalanceConsumer consumer) {
+        return future(() -> this.provider.loadBalances(currency, consumer));
+    }
+
+    public CompletableFuture<List<LedgerEntry>> loadLedgerEntries(UUID uniqueId, String currency, long before, int limit) {
+        return future(() -> this.provider.loadLedgerEntries(uniqueId, currency, before, limit));
+    }
+
     public void registerCurrencySync(Currency currency) {
         try {
             this.provider.registerCurrency(currency);
@@ -101,4 +319,20 @@ public class Storage {
             throw new RuntimeException("Failed to save users", e);
         }
     }
+
+    public void saveLedgerEntriesSync(List<LedgerEntry> entries) {
+        try {
+            this.provider.saveLedgerEntries(entries);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save ledger entries", e);
+        }
+    }
+
+    public long deleteLedgerEntriesSync(Instant before) {
+        try {
+            return this.provider.deleteLedgerEntries(before);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to delete ledger entries", e);
+        }
+    }
 }
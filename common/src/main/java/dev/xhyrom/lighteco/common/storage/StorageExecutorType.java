@@ -0,0 +1,6 @@
+package dev.xhyrom.lighteco.common.storage;
+
+public enum StorageExecutorType {
+    PLATFORM,
+    VIRTUAL;
+}
@@ -0,0 +1,209 @@
+package dev.xhyrom.lighteco.common.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.xhyrom.lighteco.common.config.storage.StorageWorkersConfig;
+import lombok.experimental.UtilityClass;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+@UtilityClass
+public class StorageExecutors {
+    /**
+     * Creates a fixed-size pool of platform threads with a bounded queue.
+     *
+     * @param config the workers config
+     * @param mayWait whether the submitting thread may wait for a free spot in a full queue
+     * @return the executor
+     */
+    public static ExecutorService platform(StorageWorkersConfig config, BooleanSupplier mayWait) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                config.threads,
+                config.threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.queueSize),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("lighteco-storage-%d")
+                        .setDaemon(true)
+                        .build(),
+                new WaitForQueuePolicy(config.queueTimeout, mayWait)
+        );
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Creates an executor that runs every operation on its own virtual thread.
+     * <p>
+     *     Only {@code concurrency} operations may run at the same time, the rest park on a semaphore.
+     *     Parking on a semaphore unmounts the virtual thread, so even if the driver blocks inside
+     *     a monitor (and pins its carrier), at most {@code concurrency} carriers are pinned
+     *     and none of them is waiting for a connection held by a parked thread.
+     * </p>
+     *
+     * @param config the workers config
+     * @param concurrency maximum number of operations running at once, usually the connection pool size
+     * @param mayWait whether the submitting thread may wait for a free spot in a full queue
+     * @return the executor, or null if virtual threads are not available on this JVM
+     */
+    public static ExecutorService virtual(StorageWorkersConfig config, int concurrency, BooleanSupplier mayWait) {
+        ThreadFactory factory = virtualThreadFactory();
+        if (factory == null) {
+            return null;
+        }
+
+        ExecutorService delegate;
+        try {
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            delegate = (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+
+        return new ConcurrencyLimitedExecutor(delegate, concurrency, config.queueSize, config.queueTimeout, mayWait);
+    }
+
+    // Thread.ofVirtual() is only available on Java 21+, look it up reflectively
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "lighteco-storage-virtual-", 0L);
+
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // older JVM, or preview features are not enabled
+            return null;
+        }
+    }
+
+    /**
+     * Applies backpressure when the queue is full:
+     * the submitting thread waits for a free spot for a limited time before the operation is rejected.
+     * Threads that must not block (the server thread) are rejected right away.
+     */
+    private static final class WaitForQueuePolicy implements RejectedExecutionHandler {
+        private final long timeout;
+        private final BooleanSupplier mayWait;
+
+        private WaitForQueuePolicy(long timeout, BooleanSupplier mayWait) {
+            this.timeout = timeout;
+            this.mayWait = mayWait;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Storage is shutting down");
+            }
+
+            try {
+                long timeout = this.mayWait.getAsBoolean() ? this.timeout : 0;
+                if (!executor.getQueue().offer(runnable, timeout, TimeUnit.MILLISECONDS)) {
+                    throw new RejectedExecutionException("Storage queue is full");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for storage queue", e);
+            }
+
+            // shut down while we were waiting, nobody is going to run it
+            if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                throw new RejectedExecutionException("Storage is shutting down");
+            }
+        }
+    }
+
+    /**
+     * Limits how many tasks of the delegate run at once and how many may wait,
+     * with the same backpressure semantics as {@link WaitForQueuePolicy}.
+     */
+    private static final class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore running;
+        private final Semaphore admitted;
+        private final long queueTimeout;
+        private final BooleanSupplier mayWait;
+
+        private ConcurrencyLimitedExecutor(ExecutorService delegate, int concurrency, int queueSize, long queueTimeout, BooleanSupplier mayWait) {
+            this.delegate = delegate;
+            this.running = new Semaphore(concurrency);
+            this.admitted = new Semaphore(concurrency + queueSize);
+            this.queueTimeout = queueTimeout;
+            this.mayWait = mayWait;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (this.delegate.isShutdown()) {
+                throw new RejectedExecutionException("Storage is shutting down");
+            }
+
+            try {
+                long timeout = this.mayWait.getAsBoolean() ? this.queueTimeout : 0;
+                if (!this.admitted.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new RejectedExecutionException("Storage queue is full");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for storage queue", e);
+            }
+
+            try {
+                this.delegate.execute(() -> {
+                    try {
+                        this.running.acquireUninterruptibly();
+                        try {
+                            command.run();
+                        } finally {
+                            this.running.release();
+                        }
+                    } finally {
+                        this.admitted.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.admitted.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            this.delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return this.delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return this.delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package dev.xhyrom.lighteco.common.storage;
+
+public enum StorageLayout {
+    TABLE_PER_CURRENCY,
+    SINGLE_TABLE;
+}
@@ -1,13 +1,18 @@
 package dev.xhyrom.lighteco.common.storage.provider.memory;
 
+import dev.xhyrom.lighteco.api.model.currency.Currency;
 import dev.xhyrom.lighteco.api.model.user.User;
 import dev.xhyrom.lighteco.api.storage.StorageProvider;
+import dev.xhyrom.lighteco.common.api.impl.ApiUser;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
 public class MemoryStorageProvider implements StorageProvider {
@@ -35,20 +40,48 @@ public class MemoryStorageProvider implements StorageProvider {
         return this.createUser(uniqueId, username, userDatabase.get(uniqueId));
     }
 
+    @Override
+    public @NonNull Collection<User> loadUsers(@NonNull Collection<UUID> uniqueIds) {
+        this.simulateSlowDatabaseQuery();
+
+        List<User> users = new ArrayList<>(uniqueIds.size());
+        for (UUID uniqueId : uniqueIds) {
+            users.add(this.createUser(uniqueId, null, userDatabase.get(uniqueId)));
+        }
+
+        return users;
+    }
+
     @Override
     public void saveUser(@NonNull User user) {
         this.simulateSlowDatabaseQuery();
 
-        this.userDatabase.put(user.getUniqueId(), user);
+        this.save(user);
     }
 
     @Override
     public void saveUsers(@NotNull @NonNull User... users) {
         for (User user : users) {
-            this.userDatabase.put(user.getUniqueId(), user);
+            this.save(user);
+        }
+    }
+
+    @Override
+    public void loadBalances(@NonNull Currency currency, @NonNull BalanceConsumer consumer) {
+        this.simulateSlowDatabaseQuery();
+
+        for (User user : this.userDatabase.values()) {
+            consumer.accept(user.getUniqueId(), user.getUsername(), user.getBalance(currency));
         }
     }
 
+    private void save(User user) {
+        dev.xhyrom.lighteco.common.model.user.User handle = ApiUser.cast(user);
+        handle.saved(handle.snapshot());
+
+        this.userDatabase.put(user.getUniqueId(), user);
+    }
+
     private User createUser(UUID uniqueId, String username, User data) {
         dev.xhyrom.lighteco.common.model.user.User user = this.plugin.getUserManager().getOrMake(uniqueId);
         if (username != null)
@@ -3,6 +3,37 @@ package dev.xhyrom.lighteco.common.storage.provider.sql;
 import dev.xhyrom.lighteco.common.storage.StorageType;
 
 public enum SqlStatements {
+    // Schema version per table, see SchemaMigrator
+    CREATE_SCHEMA_TABLE(
+            "CREATE TABLE IF NOT EXISTS '{prefix}_schema' ('name' VARCHAR(191) NOT NULL, 'version' INT NOT NULL, PRIMARY KEY ('name'));",
+            "CREATE TABLE IF NOT EXISTS '{prefix}_schema' ('name' VARCHAR(191) NOT NULL, 'version' INT NOT NULL, PRIMARY KEY ('name'));",
+            "CREATE TABLE IF NOT EXISTS '{prefix}_schema' ('name' VARCHAR(191) NOT NULL, 'version' INT NOT NULL, PRIMARY KEY ('name'));",
+            "CREATE TABLE IF NOT EXISTS '{prefix}_schema' ('name' VARCHAR(191) NOT NULL, 'version' INT NOT NULL, PRIMARY KEY ('name'));"
+    ),
+    LOAD_SCHEMA_VERSION(
+            "SELECT version FROM '{prefix}_schema' WHERE name = ?",
+            "SELECT version FROM '{prefix}_schema' WHERE name = ?",
+            "SELECT version FROM '{prefix}_schema' WHERE name = ?",
+            "SELECT version FROM '{prefix}_schema' WHERE name = ?"
+    ),
+    INSERT_SCHEMA_VERSION(
+            "INSERT INTO '{prefix}_schema' (version, name) VALUES (?, ?);",
+            "INSERT INTO '{prefix}_schema' (version, name) VALUES (?, ?);",
+            "INSERT INTO '{prefix}_schema' (version, name) VALUES (?, ?);",
+            "INSERT INTO '{prefix}_schema' (version, name) VALUES (?, ?);"
+    ),
+    UPDATE_SCHEMA_VERSION(
+            "UPDATE '{prefix}_schema' SET version = ? WHERE name = ?;",
+            "UPDATE '{prefix}_schema' SET version = ? WHERE name = ?;",
+            "UPDATE '{prefix}_schema' SET version = ? WHERE name = ?;",
+            "UPDATE '{prefix}_schema' SET version = ? WHERE name = ?;"
+    ),
+    HAS_ROWS(
+            "SELECT 1 FROM '{table}' LIMIT 1",
+            "SELECT 1 FROM '{table}' LIMIT 1",
+            "SELECT 1 FROM '{table}' LIMIT 1",
+            "SELECT 1 FROM '{table}' LIMIT 1"
+    ),
     SAVE_USER_LOCAL_CURRENCY(
             "INSERT INTO '{prefix}_local_{context}_{currency}_users' (uuid, balance) VALUES (?1, ?2) ON CONFLICT (uuid) DO UPDATE SET balance=?2;",
             "INSERT INTO '{prefix}_local_{context}_{currency}_users' (uuid, balance) VALUES (?1, ?2) ON DUPLICATE KEY UPDATE balance=?2;",
@@ -15,6 +46,51 @@ public enum SqlStatements {
             "INSERT INTO '{prefix}_global_{currency}_users' (uuid, balance) VALUES (?, ?) ON DUPLICATE KEY UPDATE balance=?;",
             "INSERT INTO '{prefix}_global_{currency}_users' (uuid, balance) VALUES (?1, ?2) ON CONFLICT (uuid) DO UPDATE SET balance=?2;"
     ),
+    CREATE_USERS_TABLE(
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'username' VARCHAR(32), 'username_lower' VARCHAR(32), PRIMARY KEY ('uuid'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'username' VARCHAR(32), 'username_lower' VARCHAR(32), PRIMARY KEY ('uuid'), INDEX '{table}_username_lower' ('username_lower'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'username' VARCHAR(32), 'username_lower' VARCHAR(32), PRIMARY KEY ('uuid'), INDEX '{table}_username_lower' ('username_lower'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'username' VARCHAR(32), 'username_lower' VARCHAR(32), PRIMARY KEY ('uuid'));"
+    ),
+    // MySQL has no CREATE INDEX IF NOT EXISTS, the index is part of the table there
+    CREATE_USERS_USERNAME_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{table}_username_lower' ON '{table}' ('username_lower');",
+            null,
+            null,
+            "CREATE INDEX IF NOT EXISTS '{table}_username_lower' ON '{table}' ('username_lower');"
+    ),
+    SAVE_USERNAME(
+            "INSERT INTO '{prefix}_users' (uuid, username, username_lower) VALUES (?1, ?2, ?3) ON CONFLICT (uuid) DO UPDATE SET username=?2, username_lower=?3;",
+            "INSERT INTO '{prefix}_users' (uuid, username, username_lower) VALUES (?1, ?2, ?3) ON DUPLICATE KEY UPDATE username=?2, username_lower=?3;",
+            "INSERT INTO '{prefix}_users' (uuid, username, username_lower) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE username=?, username_lower=?;",
+            "INSERT INTO '{prefix}_users' (uuid, username, username_lower) VALUES (?, ?, ?) ON CONFLICT (uuid) DO UPDATE SET username=?, username_lower=?;"
+    ),
+    // names are unique, whoever had the name before doesn't anymore
+    CLEAR_USERNAME(
+            "UPDATE '{prefix}_users' SET username = NULL, username_lower = NULL WHERE username_lower = ? AND uuid <> ?;",
+            "UPDATE '{prefix}_users' SET username = NULL, username_lower = NULL WHERE username_lower = ? AND uuid <> ?;",
+            "UPDATE '{prefix}_users' SET username = NULL, username_lower = NULL WHERE username_lower = ? AND uuid <> ?;",
+            "UPDATE '{prefix}_users' SET username = NULL, username_lower = NULL WHERE username_lower = ? AND uuid <> ?;"
+    ),
+    LOOKUP_UNIQUE_ID(
+            "SELECT uuid FROM '{prefix}_users' WHERE username_lower = ?",
+            "SELECT uuid FROM '{prefix}_users' WHERE username_lower = ?",
+            "SELECT uuid FROM '{prefix}_users' WHERE username_lower = ?",
+            "SELECT uuid FROM '{prefix}_users' WHERE username_lower = ?"
+    ),
+    // Read on load, so known names don't have to be saved again and the name index covers loaded users
+    LOAD_USERNAME(
+            "SELECT username FROM '{prefix}_users' WHERE uuid = ?",
+            "SELECT username FROM '{prefix}_users' WHERE uuid = ?",
+            "SELECT username FROM '{prefix}_users' WHERE uuid = ?",
+            "SELECT username FROM '{prefix}_users' WHERE uuid = ?"
+    ),
+    LOAD_USERNAMES(
+            "SELECT uuid, username FROM '{prefix}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, username FROM '{prefix}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, username FROM '{prefix}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, username FROM '{prefix}_users' WHERE uuid IN ({uniqueIds})"
+    ),
     LOAD_LOCAL_CURRENCY_USER(
             "SELECT {identifier} AS name, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid = ?1",
             "SELECT {identifier} AS name, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid = ?1",
@@ -26,8 +102,218 @@ public enum SqlStatements {
             "SELECT {identifier} AS name, balance FROM '{prefix}_global_{currency}_users' WHERE uuid = ?1",
             "SELECT {identifier} AS name, balance FROM '{prefix}_global_{currency}_users' WHERE uuid = ?",
             "SELECT {identifier} AS name, balance FROM '{prefix}_global_{currency}_users' WHERE uuid = ?1"
+    ),
+    LOAD_LOCAL_CURRENCY_USERS(
+            "SELECT uuid, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_local_{context}_{currency}_users' WHERE uuid IN ({uniqueIds})"
+    ),
+    LOAD_GLOBAL_CURRENCY_USERS(
+            "SELECT uuid, balance FROM '{prefix}_global_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_global_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_global_{currency}_users' WHERE uuid IN ({uniqueIds})",
+            "SELECT uuid, balance FROM '{prefix}_global_{currency}_users' WHERE uuid IN ({uniqueIds})"
+    ),
+    // Leaderboard pages, highest balance first. Served by the balance index, see CREATE_BALANCE_INDEX
+    LOAD_LOCAL_CURRENCY_TOP(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    LOAD_GLOBAL_CURRENCY_TOP(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    // Keyset pagination: continues after the last row of the previous page instead of using OFFSET,
+    // so every page costs the same. MySQL doesn't use indexes for row value comparisons, so it gets the expanded form
+    LOAD_LOCAL_CURRENCY_TOP_AFTER(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.balance < ? OR (b.balance = ? AND b.uuid < ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.balance < ? OR (b.balance = ? AND b.uuid < ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_local_{context}_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    LOAD_GLOBAL_CURRENCY_TOP_AFTER(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.balance < ? OR (b.balance = ? AND b.uuid < ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.balance < ? OR (b.balance = ? AND b.uuid < ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_global_{currency}_users' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    CREATE_CURRENCY_TABLE(
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'balance' DECIMAL(10, 2) NOT NULL, PRIMARY KEY ('uuid'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'balance' DECIMAL(10, 2) NOT NULL, PRIMARY KEY ('uuid'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'balance' DECIMAL(10, 2) NOT NULL, PRIMARY KEY ('uuid'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'balance' DECIMAL(10, 2) NOT NULL, PRIMARY KEY ('uuid'));"
+    ),
+    // MySQL has no CREATE INDEX IF NOT EXISTS, existing indexes are looked up first there.
+    // MySQL and MariaDB build secondary indexes in place without blocking writes, PostgreSQL needs CONCURRENTLY for that
+    CREATE_BALANCE_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('balance', 'uuid');",
+            "CREATE INDEX '{index}' ON '{table}' ('balance', 'uuid');",
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('balance', 'uuid');",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS '{index}' ON '{table}' ('balance', 'uuid');"
+    ),
+    // DECIMAL(10, 2) caps balances at 99,999,999.99. SQLite doesn't enforce column precision, so there's nothing to do.
+    // PostgreSQL only updates the catalog for an unconstrained NUMERIC. H2, MySQL and MariaDB copy the table while holding off writes,
+    // so there it's only run on the empty copy of a rebuild, see SqlMigrations#widenBalance
+    WIDEN_BALANCE(
+            null,
+            "ALTER TABLE '{table}' MODIFY 'balance' DECIMAL(30, 10) NOT NULL;",
+            "ALTER TABLE '{table}' MODIFY 'balance' DECIMAL(30, 10) NOT NULL;",
+            "ALTER TABLE '{table}' ALTER COLUMN 'balance' TYPE NUMERIC;"
+    ),
+    // Used when a table is rebuilt, see SqlMigrations#rebuild
+    RENAME_TABLE(
+            "ALTER TABLE '{table}' RENAME TO '{to}';",
+            "ALTER TABLE '{table}' RENAME TO '{to}';",
+            "ALTER TABLE '{table}' RENAME TO '{to}';",
+            "ALTER TABLE '{table}' RENAME TO '{to}';"
+    ),
+    DROP_TABLE(
+            "DROP TABLE IF EXISTS '{table}';",
+            "DROP TABLE IF EXISTS '{table}';",
+            "DROP TABLE IF EXISTS '{table}';",
+            "DROP TABLE IF EXISTS '{table}';"
+    ),
+    // Rows of a table keyed by unique id, in primary key order
+    LOAD_FIRST_UNIQUE_ID_PAGE(
+            "SELECT * FROM '{table}' ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' ORDER BY uuid LIMIT ?"
+    ),
+    LOAD_UNIQUE_ID_PAGE(
+            "SELECT * FROM '{table}' WHERE uuid > ? ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' WHERE uuid > ? ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' WHERE uuid > ? ORDER BY uuid LIMIT ?",
+            "SELECT * FROM '{table}' WHERE uuid > ? ORDER BY uuid LIMIT ?"
+    ),
+    // Single table layout, see StorageLayout.SINGLE_TABLE. Global currencies use an empty context
+    CREATE_BALANCES_TABLE(
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'context' VARCHAR(64) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, PRIMARY KEY ('uuid', 'currency', 'context'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'context' VARCHAR(64) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, PRIMARY KEY ('uuid', 'currency', 'context'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'context' VARCHAR(64) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, PRIMARY KEY ('uuid', 'currency', 'context'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'context' VARCHAR(64) NOT NULL, 'balance' NUMERIC NOT NULL, PRIMARY KEY ('uuid', 'currency', 'context'));"
+    ),
+    CREATE_BALANCES_TOP_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('currency', 'context', 'balance', 'uuid');",
+            "CREATE INDEX '{index}' ON '{table}' ('currency', 'context', 'balance', 'uuid');",
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('currency', 'context', 'balance', 'uuid');",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS '{index}' ON '{table}' ('currency', 'context', 'balance', 'uuid');"
+    ),
+    SAVE_BALANCE(
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) VALUES (?1, ?2, ?3, ?4) ON CONFLICT (uuid, currency, context) DO UPDATE SET balance=?4;",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) VALUES (?1, ?2, ?3, ?4) ON DUPLICATE KEY UPDATE balance=?4;",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE balance=?;",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) VALUES (?, ?, ?, ?) ON CONFLICT (uuid, currency, context) DO UPDATE SET balance=?;"
+    ),
+    DELETE_BALANCE(
+            "DELETE FROM '{prefix}_balances' WHERE uuid = ? AND currency = ? AND context = ?;",
+            "DELETE FROM '{prefix}_balances' WHERE uuid = ? AND currency = ? AND context = ?;",
+            "DELETE FROM '{prefix}_balances' WHERE uuid = ? AND currency = ? AND context = ?;",
+            "DELETE FROM '{prefix}_balances' WHERE uuid = ? AND currency = ? AND context = ?;"
+    ),
+    // Reads a prefix of the primary key, so it's a single range read however many currencies there are
+    LOAD_BALANCES_USER(
+            "SELECT currency, context, balance FROM '{prefix}_balances' WHERE uuid = ? AND context IN (?, ?)",
+            "SELECT currency, context, balance FROM '{prefix}_balances' WHERE uuid = ? AND context IN (?, ?)",
+            "SELECT currency, context, balance FROM '{prefix}_balances' WHERE uuid = ? AND context IN (?, ?)",
+            "SELECT currency, context, balance FROM '{prefix}_balances' WHERE uuid = ? AND context IN (?, ?)"
+    ),
+    LOAD_BALANCES_USERS(
+            "SELECT uuid, currency, context, balance FROM '{prefix}_balances' WHERE uuid IN ({uniqueIds}) AND context IN (?, ?)",
+            "SELECT uuid, currency, context, balance FROM '{prefix}_balances' WHERE uuid IN ({uniqueIds}) AND context IN (?, ?)",
+            "SELECT uuid, currency, context, balance FROM '{prefix}_balances' WHERE uuid IN ({uniqueIds}) AND context IN (?, ?)",
+            "SELECT uuid, currency, context, balance FROM '{prefix}_balances' WHERE uuid IN ({uniqueIds}) AND context IN (?, ?)"
+    ),
+    LOAD_BALANCES_TOP(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    LOAD_BALANCES_TOP_AFTER(
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? AND (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? AND (b.balance < ? OR (b.balance = ? AND b.uuid < ?)) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? AND (b.balance < ? OR (b.balance = ? AND b.uuid < ?)) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?",
+            "SELECT b.uuid, u.username, b.balance FROM '{prefix}_balances' b LEFT JOIN '{prefix}_users' u ON u.uuid = b.uuid WHERE b.currency = ? AND b.context = ? AND (b.balance, b.uuid) < (?, ?) ORDER BY b.balance DESC, b.uuid DESC LIMIT ?"
+    ),
+    // Ledger, see StandardLedgerManager. 'other' holds a unique id too, stored the same way as 'uuid'
+    CREATE_LEDGER_TABLE(
+            "CREATE TABLE IF NOT EXISTS '{table}' ('id' INTEGER PRIMARY KEY AUTOINCREMENT, 'created_at' BIGINT NOT NULL, 'uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'type' VARCHAR(16) NOT NULL, 'amount' DECIMAL(30, 10) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, 'other' {uuid}, 'source' VARCHAR(64));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('id' BIGINT NOT NULL AUTO_INCREMENT, 'created_at' BIGINT NOT NULL, 'uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'type' VARCHAR(16) NOT NULL, 'amount' DECIMAL(30, 10) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, 'other' {uuid}, 'source' VARCHAR(64), PRIMARY KEY ('id'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('id' BIGINT NOT NULL AUTO_INCREMENT, 'created_at' BIGINT NOT NULL, 'uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'type' VARCHAR(16) NOT NULL, 'amount' DECIMAL(30, 10) NOT NULL, 'balance' DECIMAL(30, 10) NOT NULL, 'other' {uuid}, 'source' VARCHAR(64), PRIMARY KEY ('id'));",
+            "CREATE TABLE IF NOT EXISTS '{table}' ('id' BIGSERIAL NOT NULL, 'created_at' BIGINT NOT NULL, 'uuid' {uuid} NOT NULL, 'currency' VARCHAR(64) NOT NULL, 'type' VARCHAR(16) NOT NULL, 'amount' NUMERIC NOT NULL, 'balance' NUMERIC NOT NULL, 'other' {uuid}, 'source' VARCHAR(64), PRIMARY KEY ('id'));"
+    ),
+    CREATE_LEDGER_USER_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'id');",
+            "CREATE INDEX '{index}' ON '{table}' ('uuid', 'id');",
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'id');",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'id');"
+    ),
+    CREATE_LEDGER_USER_CURRENCY_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'currency', 'id');",
+            "CREATE INDEX '{index}' ON '{table}' ('uuid', 'currency', 'id');",
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'currency', 'id');",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS '{index}' ON '{table}' ('uuid', 'currency', 'id');"
+    ),
+    CREATE_LEDGER_TIME_INDEX(
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('created_at');",
+            "CREATE INDEX '{index}' ON '{table}' ('created_at');",
+            "CREATE INDEX IF NOT EXISTS '{index}' ON '{table}' ('created_at');",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS '{index}' ON '{table}' ('created_at');"
+    ),
+    INSERT_LEDGER_ENTRY(
+            "INSERT INTO '{prefix}_ledger' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{prefix}_ledger' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{prefix}_ledger' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{prefix}_ledger' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);"
+    ),
+    // History pages, newest first, continuing below the last id of the previous page. Served by the user and user currency indexes
+    LOAD_LEDGER_USER(
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND id < ? ORDER BY id DESC LIMIT ?"
+    ),
+    LOAD_LEDGER_USER_CURRENCY(
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND currency = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND currency = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND currency = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{prefix}_ledger' WHERE uuid = ? AND currency = ? AND id < ? ORDER BY id DESC LIMIT ?"
+    ),
+    // Copies the ledger page by page when unique ids are converted. The ids are assigned again, in the same order
+    LOAD_LEDGER_PAGE(
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{table}' WHERE id > ? ORDER BY id LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{table}' WHERE id > ? ORDER BY id LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{table}' WHERE id > ? ORDER BY id LIMIT ?",
+            "SELECT id, created_at, uuid, currency, type, amount, balance, other, source FROM '{table}' WHERE id > ? ORDER BY id LIMIT ?"
+    ),
+    COPY_LEDGER_ENTRY(
+            "INSERT INTO '{table}' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{table}' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{table}' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+            "INSERT INTO '{table}' (created_at, uuid, currency, type, amount, balance, other, source) VALUES (?, ?, ?, ?, ?, ?, ?, ?);"
+    ),
+    // Deletes in chunks, so pruning doesn't lock the whole table for long. MySQL has no LIMIT in subqueries, but DELETE ... LIMIT
+    DELETE_LEDGER_BEFORE(
+            "DELETE FROM '{prefix}_ledger' WHERE id IN (SELECT id FROM '{prefix}_ledger' WHERE created_at < ? LIMIT ?);",
+            "DELETE FROM '{prefix}_ledger' WHERE created_at < ? LIMIT ?;",
+            "DELETE FROM '{prefix}_ledger' WHERE created_at < ? LIMIT ?;",
+            "DELETE FROM '{prefix}_ledger' WHERE id IN (SELECT id FROM '{prefix}_ledger' WHERE created_at < ? LIMIT ?);"
+    ),
+    // Copies a table of the table per currency layout, rows already in the balances table win
+    COPY_CURRENCY_TABLE_TO_BALANCES(
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) SELECT o.uuid, CAST(? AS VARCHAR(64)), CAST(? AS VARCHAR(64)), o.balance FROM '{table}' o WHERE NOT EXISTS (SELECT 1 FROM '{prefix}_balances' b WHERE b.uuid = o.uuid AND b.currency = ? AND b.context = ?);",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) SELECT o.uuid, CAST(? AS CHAR(64)), CAST(? AS CHAR(64)), o.balance FROM '{table}' o WHERE NOT EXISTS (SELECT 1 FROM '{prefix}_balances' b WHERE b.uuid = o.uuid AND b.currency = ? AND b.context = ?);",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) SELECT o.uuid, CAST(? AS CHAR(64)), CAST(? AS CHAR(64)), o.balance FROM '{table}' o WHERE NOT EXISTS (SELECT 1 FROM '{prefix}_balances' b WHERE b.uuid = o.uuid AND b.currency = ? AND b.context = ?);",
+            "INSERT INTO '{prefix}_balances' (uuid, currency, context, balance) SELECT o.uuid, CAST(? AS VARCHAR(64)), CAST(? AS VARCHAR(64)), o.balance FROM '{table}' o WHERE NOT EXISTS (SELECT 1 FROM '{prefix}_balances' b WHERE b.uuid = o.uuid AND b.currency = ? AND b.context = ?);"
     );
 
+
     public final String sqlite;
     public final String mysql;
     public final String mariadb;
@@ -61,4 +347,18 @@ public enum SqlStatements {
     public static boolean mustDuplicateParameters(StorageType implementationName) {
         return implementationName == StorageType.MARIADB || implementationName == StorageType.POSTGRESQL;
     }
+
+    /**
+     * Whether keyset conditions are written as {@code a < ? OR (a = ? AND b < ?)} instead of row values.
+     */
+    public static boolean usesExpandedKeyset(StorageType implementationName) {
+        return implementationName == StorageType.H2 || implementationName == StorageType.MYSQL || implementationName == StorageType.MARIADB;
+    }
+
+    /**
+     * Whether the CREATE_*_INDEX statements (e.g. {@link #CREATE_BALANCE_INDEX}) can't skip existing indexes by themselves.
+     */
+    public static boolean mustCheckIndexExists(StorageType implementationName) {
+        return implementationName == StorageType.H2 || implementationName == StorageType.MYSQL;
+    }
 }
@@ -1,11 +1,18 @@
 package dev.xhyrom.lighteco.common.storage.provider.sql;
 
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
 import dev.xhyrom.lighteco.api.model.user.User;
 import dev.xhyrom.lighteco.api.storage.StorageProvider;
+import dev.xhyrom.lighteco.common.api.impl.ApiUser;
 import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.UserSnapshot;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import dev.xhyrom.lighteco.common.storage.StorageLayout;
 import dev.xhyrom.lighteco.common.storage.StorageType;
 import dev.xhyrom.lighteco.common.storage.provider.sql.connection.ConnectionFactory;
+import dev.xhyrom.lighteco.common.storage.provider.sql.migration.Migration;
+import dev.xhyrom.lighteco.common.storage.provider.sql.migration.SchemaMigrator;
+import dev.xhyrom.lighteco.common.storage.provider.sql.migration.SqlMigrations;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -15,9 +22,20 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class SqlStorageProvider implements StorageProvider {
     private static String SAVE_USER_LOCAL_CURRENCY;
@@ -26,19 +44,58 @@ public class SqlStorageProvider implements StorageProvider {
     private static String LOAD_LOCAL_CURRENCY_USER;
     private static String LOAD_GLOBAL_CRRENCY_USER;
 
+    private static String LOAD_LOCAL_CURRENCY_USERS;
+    private static String LOAD_GLOBAL_CURRENCY_USERS;
+
+    private static String LOAD_LOCAL_CURRENCY_TOP;
+    private static String LOAD_GLOBAL_CURRENCY_TOP;
+    private static String LOAD_LOCAL_CURRENCY_TOP_AFTER;
+    private static String LOAD_GLOBAL_CURRENCY_TOP_AFTER;
+
+    // Keeps IN (...) lists below the bind variable limit of every supported database
+    private static final int LOAD_USERS_CHUNK_SIZE = 500;
+    private static final int LOAD_BALANCES_PAGE_SIZE = 1000;
+    private static final int DELETE_LEDGER_CHUNK_SIZE = 10000;
+
     private static final String DELETE_LOCAL_USER = "DELETE FROM {prefix}_local_{context}_{currency}_users WHERE uuid = ?;";
     private static final String DELETE_GLOBAL_USER = "DELETE FROM {prefix}_global_{currency}_users WHERE uuid = ?;";
-    private static final String CREATE_TABLE = """
-    CREATE TABLE IF NOT EXISTS '{prefix}_{table}' (
-        'uuid'                  VARCHAR(36)     NOT NULL,
-        'balance'               DECIMAL(10, 2)  NOT NULL,
-        PRIMARY KEY (`uuid`)
-    );
-    """.trim();
 
     private final LightEcoPlugin plugin;
     private final ConnectionFactory connectionFactory;
     private final Function<String, String> statementProcessor;
+    private final boolean duplicateParameters;
+    private final boolean expandedKeyset;
+    private final boolean singleTable;
+    private final UniqueIdCodec codec;
+
+    private final SchemaMigrator migrator;
+    private final SqlMigrations migrations;
+
+    private final String saveUsername;
+    private final String clearUsername;
+    private final String lookupUniqueId;
+    private final String loadUsername;
+    private final String loadUsernames;
+
+    // Single table layout only
+    private final String balancesTable;
+    private final String saveBalance;
+    private final String deleteBalance;
+    private final String loadBalancesUser;
+    private final String loadBalancesUsers;
+    private final String loadBalancesTop;
+    private final String loadBalancesTopAfter;
+
+    private final String ledgerTable;
+    private final String insertLedgerEntry;
+    private final String loadLedgerUser;
+    private final String loadLedgerUserCurrency;
+    private final String deleteLedgerBefore;
+
+    // Final SQL per currency, built once in registerCurrency
+    private final Map<String, CurrencyStatements> statements = new ConcurrentHashMap<>();
+    private final List<CurrencyStatements> registrationOrder = new CopyOnWriteArrayList<>();
+    private volatile LoadQuery loadUserQuery;
 
     public SqlStorageProvider(LightEcoPlugin plugin, ConnectionFactory connectionFactory) {
         this.plugin = plugin;
@@ -50,19 +107,84 @@ public class SqlStorageProvider implements StorageProvider {
         );
 
         final StorageType implementationName = this.connectionFactory.getImplementationName();
+        this.duplicateParameters = SqlStatements.mustDuplicateParameters(implementationName);
+        this.expandedKeyset = SqlStatements.usesExpandedKeyset(implementationName);
+        this.singleTable = plugin.getConfig().storage.layout == StorageLayout.SINGLE_TABLE;
+        this.codec = UniqueIdCodec.of(implementationName, plugin.getConfig().storage.binaryUniqueIds);
+
+        this.migrator = new SchemaMigrator(plugin, connectionFactory, this.statementProcessor);
+        this.migrations = new SqlMigrations(implementationName, this.statementProcessor, this.codec);
+
         SAVE_USER_LOCAL_CURRENCY = SqlStatements.SAVE_USER_LOCAL_CURRENCY.get(implementationName);
         SAVE_USER_GLOBAL_CURRENCY = SqlStatements.SAVE_USER_GLOBAL_CURRENCY.get(implementationName);
         LOAD_LOCAL_CURRENCY_USER = SqlStatements.LOAD_LOCAL_CURRENCY_USER.get(implementationName);
         LOAD_GLOBAL_CRRENCY_USER = SqlStatements.LOAD_GLOBAL_CURRENCY_USER.get(implementationName);
+        LOAD_LOCAL_CURRENCY_USERS = SqlStatements.LOAD_LOCAL_CURRENCY_USERS.get(implementationName);
+        LOAD_GLOBAL_CURRENCY_USERS = SqlStatements.LOAD_GLOBAL_CURRENCY_USERS.get(implementationName);
+        LOAD_LOCAL_CURRENCY_TOP = SqlStatements.LOAD_LOCAL_CURRENCY_TOP.get(implementationName);
+        LOAD_GLOBAL_CURRENCY_TOP = SqlStatements.LOAD_GLOBAL_CURRENCY_TOP.get(implementationName);
+        LOAD_LOCAL_CURRENCY_TOP_AFTER = SqlStatements.LOAD_LOCAL_CURRENCY_TOP_AFTER.get(implementationName);
+        LOAD_GLOBAL_CURRENCY_TOP_AFTER = SqlStatements.LOAD_GLOBAL_CURRENCY_TOP_AFTER.get(implementationName);
+
+        this.saveUsername = this.statementProcessor.apply(SqlStatements.SAVE_USERNAME.get(implementationName));
+        this.clearUsername = this.statementProcessor.apply(SqlStatements.CLEAR_USERNAME.get(implementationName));
+        this.lookupUniqueId = this.statementProcessor.apply(SqlStatements.LOOKUP_UNIQUE_ID.get(implementationName));
+        this.loadUsername = this.statementProcessor.apply(SqlStatements.LOAD_USERNAME.get(implementationName));
+        this.loadUsernames = this.statementProcessor.apply(SqlStatements.LOAD_USERNAMES.get(implementationName));
+
+        this.balancesTable = this.statementProcessor.apply("{prefix}_balances");
+        this.saveBalance = this.statementProcessor.apply(SqlStatements.SAVE_BALANCE.get(implementationName));
+        this.deleteBalance = this.statementProcessor.apply(SqlStatements.DELETE_BALANCE.get(implementationName));
+        this.loadBalancesUser = this.statementProcessor.apply(SqlStatements.LOAD_BALANCES_USER.get(implementationName));
+        this.loadBalancesUsers = this.statementProcessor.apply(SqlStatements.LOAD_BALANCES_USERS.get(implementationName));
+        this.loadBalancesTop = this.statementProcessor.apply(SqlStatements.LOAD_BALANCES_TOP.get(implementationName));
+        this.loadBalancesTopAfter = this.statementProcessor.apply(SqlStatements.LOAD_BALANCES_TOP_AFTER.get(implementationName));
+
+        this.ledgerTable = this.statementProcessor.apply("{prefix}_ledger");
+        this.insertLedgerEntry = this.statementProcessor.apply(SqlStatements.INSERT_LEDGER_ENTRY.get(implementationName));
+        this.loadLedgerUser = this.statementProcessor.apply(SqlStatements.LOAD_LEDGER_USER.get(implementationName));
+        this.loadLedgerUserCurrency = this.statementProcessor.apply(SqlStatements.LOAD_LEDGER_USER_CURRENCY.get(implementationName));
+        this.deleteLedgerBefore = this.statementProcessor.apply(SqlStatements.DELETE_LEDGER_BEFORE.get(implementationName));
     }
 
     @Override
-    public void init() {
+    public void init() throws Exception {
         this.connectionFactory.init(this.plugin);
+
+        this.migrator.init();
+
+        String usersTable = this.statementProcessor.apply("{prefix}_users");
+        this.convertUniqueIds(usersTable, this.migrations.usersUniqueIds(this::rebuilt));
+        this.migrator.migrate(usersTable, this.migrations.users());
+
+        if (this.singleTable) {
+            this.convertUniqueIds(this.balancesTable, this.migrations.balancesUniqueIds(this::rebuilt));
+            this.migrator.migrate(this.balancesTable, this.migrations.balances());
+        }
+
+        // created even if the ledger is disabled, so history recorded earlier can still be read
+        this.convertUniqueIds(this.ledgerTable, this.migrations.ledgerUniqueIds(this::rebuilt));
+        this.migrator.migrate(this.ledgerTable, this.migrations.ledger());
+    }
+
+    /**
+     * Converts string unique ids of an existing table, before any other migration of it runs.
+     */
+    private void convertUniqueIds(String table, List<Migration> migrations) throws SQLException {
+        if (this.codec == UniqueIdCodec.STRING)
+            return;
+
+        this.migrator.migrate(table + ":uuid", table, migrations);
+    }
+
+    // A rebuilt table is back at its first version, so later steps (indexes) run again
+    private void rebuilt(Connection c, String table) throws SQLException {
+        this.migrator.setVersion(c, table, 1);
     }
 
     @Override
     public void shutdown() throws Exception {
+        this.migrator.shutdown();
         this.connectionFactory.shutdown();
     }
 
@@ -80,176 +202,637 @@ public class SqlStorageProvider implements StorageProvider {
 
         tableName.append("_users");
 
-        try (Connection c = this.connectionFactory.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement(
-                    this.statementProcessor.apply(CREATE_TABLE
-                            .replace("{table}", tableName.toString())
-                    )
-            )) {
-                ps.execute();
+        String table = this.statementProcessor.apply("{prefix}_" + tableName);
+
+        if (this.singleTable) {
+            // balances saved with the table per currency layout, copied once
+            String copied = this.balancesTable + ":" + table;
+            if (this.migrator.version(copied) == 0) {
+                // converted first, so they can be copied as they are
+                this.convertUniqueIds(table, this.migrations.currencyUniqueIds(this::rebuilt));
+                this.migrator.migrate(copied, table, this.migrations.copyToBalances(currency.getIdentifier(), this.context(currency)));
+            }
+        } else {
+            this.convertUniqueIds(table, this.migrations.currencyUniqueIds(this::rebuilt));
+            this.migrator.migrate(table, this.migrations.currency());
+        }
+
+        this.registerStatements(currency);
+    }
+
+    private String context(dev.xhyrom.lighteco.api.model.currency.Currency currency) {
+        return currency.getType() == dev.xhyrom.lighteco.api.model.currency.Currency.Type.LOCAL ? this.plugin.getConfig().server : "";
+    }
+
+    private synchronized void registerStatements(dev.xhyrom.lighteco.api.model.currency.Currency currency) {
+        String identifier = currency.getIdentifier();
+        boolean local = currency.getType() == dev.xhyrom.lighteco.api.model.currency.Currency.Type.LOCAL;
+
+        CurrencyStatements statements = this.singleTable ? new CurrencyStatements(
+                identifier,
+                this.context(currency),
+                this.saveBalance,
+                this.deleteBalance,
+                null,
+                null,
+                this.loadBalancesTop,
+                this.loadBalancesTopAfter
+        ) : new CurrencyStatements(
+                identifier,
+                this.context(currency),
+                this.processCurrencyStatement(local ? SAVE_USER_LOCAL_CURRENCY : SAVE_USER_GLOBAL_CURRENCY, identifier),
+                this.processCurrencyStatement(local ? DELETE_LOCAL_USER : DELETE_GLOBAL_USER, identifier),
+                this.processCurrencyStatement(local ? LOAD_LOCAL_CURRENCY_USER : LOAD_GLOBAL_CRRENCY_USER, identifier)
+                        .replace("{identifier}", "'" + identifier + "'"),
+                this.processCurrencyStatement(local ? LOAD_LOCAL_CURRENCY_USERS : LOAD_GLOBAL_CURRENCY_USERS, identifier),
+                this.processCurrencyStatement(local ? LOAD_LOCAL_CURRENCY_TOP : LOAD_GLOBAL_CURRENCY_TOP, identifier),
+                this.processCurrencyStatement(local ? LOAD_LOCAL_CURRENCY_TOP_AFTER : LOAD_GLOBAL_CURRENCY_TOP_AFTER, identifier)
+        );
+
+        CurrencyStatements previous = this.statements.put(identifier, statements);
+        if (previous != null) {
+            this.registrationOrder.remove(previous);
+        }
+        this.registrationOrder.add(statements);
+
+        if (this.singleTable)
+            return;
+
+        // rebuild the combined load query, so loadUser doesn't have to
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < this.registrationOrder.size(); i++) {
+            if (i != 0) {
+                query.append(" UNION ALL ");
             }
+
+            query.append(this.registrationOrder.get(i).load());
         }
+
+        this.loadUserQuery = new LoadQuery(query.toString(), this.registrationOrder.size());
+    }
+
+    private String processCurrencyStatement(String statement, String identifier) {
+        return this.statementProcessor.apply(statement.replace("{currency}", identifier));
     }
 
     @Override
     public @NonNull User loadUser(@NonNull UUID uniqueId, @Nullable String username) throws Exception {
-        String uniqueIdString = uniqueId.toString();
         dev.xhyrom.lighteco.common.model.user.User user = this.plugin.getUserManager().getOrMake(uniqueId);
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            this.loadUsername(c, user);
+
+            if (this.singleTable) {
+                this.loadBalances(c, user);
+            } else {
+                this.loadCurrencies(c, user);
+            }
+        }
+
+        // after the stored one, so the name is only saved again if it changed
         if (username != null)
             user.setUsername(username);
 
-        StringBuilder query = new StringBuilder();
-        List<Currency> currencies = this.plugin.getCurrencyManager().getRegisteredCurrencies().stream().toList();
-        int size = this.plugin.getCurrencyManager().getRegisteredCurrencies().size();
-
-        for (int i = 0; i < size; i++) {
-            Currency currency = currencies.get(i);
-
-            switch (currency.getType()) {
-                case GLOBAL -> query.append(
-                        this.statementProcessor.apply(LOAD_GLOBAL_CRRENCY_USER
-                                .replace("{currency}", currency.getIdentifier())
-                        ).replace("{identifier}", "'"+currency.getIdentifier()+"'")
-                );
-                case LOCAL -> query.append(
-                        this.statementProcessor.apply(LOAD_LOCAL_CURRENCY_USER
-                                .replace("{currency}", currency.getIdentifier())
-                        ).replace("{identifier}", "'"+currency.getIdentifier()+"'")
-                );
-            }
-
-            if (i != size - 1) {
-                query.append(" UNION ALL ");
+        return user.getProxy();
+    }
+
+    private void loadUsername(Connection c, dev.xhyrom.lighteco.common.model.user.User user) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.loadUsername)) {
+            this.codec.set(ps, 1, user.getUniqueId());
+
+            ResultSet rs = ps.executeQuery();
+            if (rs.next())
+                user.setUsername(rs.getString("username"), true);
+        }
+    }
+
+    private void loadCurrencies(Connection c, dev.xhyrom.lighteco.common.model.user.User user) throws SQLException {
+        LoadQuery query = this.loadUserQuery;
+        if (query == null) {
+            // no currencies registered yet, nothing to load
+            return;
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(query.sql())) {
+            if (this.duplicateParameters) {
+                for (int i = 0; i < query.parameters(); i++) {
+                    this.codec.set(ps, i + 1, user.getUniqueId());
+                }
+            } else {
+                this.codec.set(ps, 1, user.getUniqueId());
+            }
+
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                String identifier = rs.getString("name");
+                Currency currency = this.plugin.getCurrencyManager().getIfLoaded(identifier);
+                if (currency == null)
+                    continue;
+
+                BigDecimal balance = rs.getBigDecimal("balance");
+
+                user.setBalance(currency, balance, true);
+            }
+        }
+    }
+
+    private void loadBalances(Connection c, dev.xhyrom.lighteco.common.model.user.User user) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.loadBalancesUser)) {
+            this.codec.set(ps, 1, user.getUniqueId());
+            ps.setString(2, "");
+            ps.setString(3, this.plugin.getConfig().server);
+
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                Currency currency = this.currency(rs.getString("currency"), rs.getString("context"));
+                if (currency == null)
+                    continue;
+
+                user.setBalance(currency, rs.getBigDecimal("balance"), true);
             }
         }
+    }
+
+    /**
+     * Returns the registered currency a row of the balances table belongs to.
+     * A global and a local currency can't share an identifier, so rows from the other kind are skipped.
+     */
+    private @Nullable Currency currency(String identifier, String context) {
+        CurrencyStatements statements = this.statements.get(identifier);
+        if (statements == null || !statements.context().equals(context))
+            return null;
+
+        return this.plugin.getCurrencyManager().getIfLoaded(identifier);
+    }
+
+    @Override
+    public @NonNull Collection<User> loadUsers(@NonNull Collection<UUID> uniqueIds) throws Exception {
+        Map<UUID, dev.xhyrom.lighteco.common.model.user.User> users = new LinkedHashMap<>();
+        for (UUID uniqueId : uniqueIds) {
+            users.put(uniqueId, this.plugin.getUserManager().getOrMake(uniqueId));
+        }
+
+        List<UUID> keys = new ArrayList<>(users.keySet());
 
         try (Connection c = this.connectionFactory.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement(query.toString())) {
-                if (SqlStatements.mustDuplicateParameters(this.connectionFactory.getImplementationName())) {
-                    for (int i = 0; i < size; i++) {
-                        ps.setString(i + 1, uniqueIdString);
+            this.loadUsernames(c, users, keys);
+
+            if (this.singleTable) {
+                this.loadBalances(c, users, keys);
+                return users.values().stream()
+                        .map(dev.xhyrom.lighteco.common.model.user.User::getProxy)
+                        .collect(Collectors.toList());
+            }
+
+            // one query per currency table (and chunk), instead of one per user
+            for (CurrencyStatements statements : this.registrationOrder) {
+                Currency currency = this.plugin.getCurrencyManager().getIfLoaded(statements.identifier());
+                if (currency == null)
+                    continue;
+
+                for (int from = 0; from < keys.size(); from += LOAD_USERS_CHUNK_SIZE) {
+                    List<UUID> chunk = keys.subList(from, Math.min(keys.size(), from + LOAD_USERS_CHUNK_SIZE));
+
+                    try (PreparedStatement ps = c.prepareStatement(statements.loadMany().replace("{uniqueIds}", placeholders(chunk.size())))) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            this.codec.set(ps, i + 1, chunk.get(i));
+                        }
+
+                        ResultSet rs = ps.executeQuery();
+
+                        while (rs.next()) {
+                            dev.xhyrom.lighteco.common.model.user.User user = users.get(this.codec.get(rs, "uuid"));
+                            if (user == null)
+                                continue;
+
+                            user.setBalance(currency, rs.getBigDecimal("balance"), true);
+                        }
                     }
-                } else {
-                    ps.setString(1, uniqueIdString);
+                }
+            }
+        }
+
+        return users.values().stream()
+                .map(dev.xhyrom.lighteco.common.model.user.User::getProxy)
+                .collect(Collectors.toList());
+    }
+
+    private void loadUsernames(Connection c, Map<UUID, dev.xhyrom.lighteco.common.model.user.User> users, List<UUID> keys) throws SQLException {
+        for (int from = 0; from < keys.size(); from += LOAD_USERS_CHUNK_SIZE) {
+            List<UUID> chunk = keys.subList(from, Math.min(keys.size(), from + LOAD_USERS_CHUNK_SIZE));
+
+            try (PreparedStatement ps = c.prepareStatement(this.loadUsernames.replace("{uniqueIds}", placeholders(chunk.size())))) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    this.codec.set(ps, i + 1, chunk.get(i));
                 }
 
                 ResultSet rs = ps.executeQuery();
 
                 while (rs.next()) {
-                    String identifier = rs.getString("name");
-                    Currency currency = this.plugin.getCurrencyManager().getIfLoaded(identifier);
+                    dev.xhyrom.lighteco.common.model.user.User user = users.get(this.codec.get(rs, "uuid"));
+                    if (user != null)
+                        user.setUsername(rs.getString("username"), true);
+                }
+            }
+        }
+    }
 
-                    BigDecimal balance = rs.getBigDecimal("balance");
+    private void loadBalances(Connection c, Map<UUID, dev.xhyrom.lighteco.common.model.user.User> users, List<UUID> keys) throws SQLException {
+        for (int from = 0; from < keys.size(); from += LOAD_USERS_CHUNK_SIZE) {
+            List<UUID> chunk = keys.subList(from, Math.min(keys.size(), from + LOAD_USERS_CHUNK_SIZE));
 
-                    user.setBalance(currency, balance, true);
+            try (PreparedStatement ps = c.prepareStatement(this.loadBalancesUsers.replace("{uniqueIds}", placeholders(chunk.size())))) {
+                int parameter = 1;
+                for (UUID uniqueId : chunk) {
+                    this.codec.set(ps, parameter++, uniqueId);
+                }
+
+                ps.setString(parameter++, "");
+                ps.setString(parameter, this.plugin.getConfig().server);
+
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next()) {
+                    dev.xhyrom.lighteco.common.model.user.User user = users.get(this.codec.get(rs, "uuid"));
+                    Currency currency = this.currency(rs.getString("currency"), rs.getString("context"));
+                    if (user == null || currency == null)
+                        continue;
+
+                    user.setBalance(currency, rs.getBigDecimal("balance"), true);
                 }
             }
         }
-
-        return user.getProxy();
     }
 
+    /**
+     * Reads balances page by page, highest first, continuing after the last row of the previous page.
+     * Each page is an index range scan, no matter how many rows come before it.
+     */
     @Override
-    public void saveUser(@NonNull User user) throws Exception {
-        String uniqueIdString = user.getUniqueId().toString();
+    public void loadBalances(dev.xhyrom.lighteco.api.model.currency.@NonNull Currency currency, @NonNull BalanceConsumer consumer) throws Exception {
+        CurrencyStatements statements = this.statements.get(currency.getIdentifier());
+        if (statements == null)
+            return;
+
+        BigDecimal lastBalance = null;
+        UUID lastUniqueId = null;
 
         try (Connection c = this.connectionFactory.getConnection()) {
-            try {
-                saveBalances(c, user, uniqueIdString);
-            } catch (SQLException e) {
-                throw new SQLException("Failed to save user " + user.getUniqueId(), e);
-            }
+            int read;
+
+            do {
+                read = 0;
+
+                try (PreparedStatement ps = c.prepareStatement(lastBalance == null ? statements.top() : statements.topAfter())) {
+                    int parameter = 1;
+
+                    if (this.singleTable) {
+                        ps.setString(parameter++, statements.identifier());
+                        ps.setString(parameter++, statements.context());
+                    }
+
+                    if (lastBalance != null) {
+                        ps.setBigDecimal(parameter++, lastBalance);
+                        if (this.expandedKeyset)
+                            ps.setBigDecimal(parameter++, lastBalance);
+                        this.codec.set(ps, parameter++, lastUniqueId);
+                    }
+
+                    ps.setInt(parameter, LOAD_BALANCES_PAGE_SIZE);
+
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        lastUniqueId = this.codec.get(rs, "uuid");
+                        lastBalance = rs.getBigDecimal("balance");
+                        read++;
+
+                        consumer.accept(lastUniqueId, rs.getString("username"), lastBalance);
+                    }
+                }
+            } while (read == LOAD_BALANCES_PAGE_SIZE);
         }
     }
 
     @Override
-    public void saveUsers(@NotNull @NonNull User... users) throws Exception {
-        // use transaction
+    public @Nullable UUID lookupUniqueId(@NonNull String username) throws Exception {
         try (Connection c = this.connectionFactory.getConnection()) {
-            try {
-                c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(this.lookupUniqueId)) {
+                ps.setString(1, username.toLowerCase(Locale.ROOT));
+
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next())
+                    return null;
 
-                for (User user : users) {
-                    String uniqueIdString = user.getUniqueId().toString();
+                return this.codec.get(rs, "uuid");
+            }
+        }
+    }
 
-                    saveBalances(c, user, uniqueIdString, false);
+    /**
+     * Appends the entries in a single transaction, sent as one JDBC batch.
+     */
+    @Override
+    public void saveLedgerEntries(@NonNull List<LedgerEntry> entries) throws Exception {
+        if (entries.isEmpty()) return;
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            c.setAutoCommit(false);
+
+            try (PreparedStatement ps = c.prepareStatement(this.insertLedgerEntry)) {
+                for (LedgerEntry entry : entries) {
+                    ps.setLong(1, entry.time().toEpochMilli());
+                    this.codec.set(ps, 2, entry.uniqueId());
+                    ps.setString(3, entry.currency());
+                    ps.setString(4, entry.type().name());
+                    ps.setBigDecimal(5, entry.amount());
+                    ps.setBigDecimal(6, entry.balance());
+                    this.codec.setNullable(ps, 7, entry.other());
+                    ps.setString(8, entry.source());
+                    ps.addBatch();
                 }
 
+                ps.executeBatch();
                 c.commit();
-            } catch (SQLException e) {
+            } catch (SQLException | RuntimeException e) {
                 c.rollback();
                 throw e;
+            } finally {
+                c.setAutoCommit(true);
             }
         }
     }
 
-    private void saveBalances(Connection c, User user, String uniqueIdString) throws SQLException {
-        saveBalances(c, user, uniqueIdString, true);
+    @Override
+    public @NonNull List<LedgerEntry> loadLedgerEntries(@NonNull UUID uniqueId, @Nullable String currency, long before, int limit) throws Exception {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(currency == null ? this.loadLedgerUser : this.loadLedgerUserCurrency)) {
+                int index = 1;
+                this.codec.set(ps, index++, uniqueId);
+                if (currency != null)
+                    ps.setString(index++, currency);
+
+                ps.setLong(index++, before);
+                ps.setInt(index, limit);
+
+                List<LedgerEntry> entries = new ArrayList<>();
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    entries.add(new LedgerEntry(
+                            rs.getLong("id"),
+                            Instant.ofEpochMilli(rs.getLong("created_at")),
+                            this.codec.get(rs, "uuid"),
+                            rs.getString("currency"),
+                            LedgerEntry.Type.valueOf(rs.getString("type")),
+                            rs.getBigDecimal("amount"),
+                            rs.getBigDecimal("balance"),
+                            this.codec.get(rs, "other"),
+                            rs.getString("source")
+                    ));
+                }
+
+                return entries;
+            }
+        }
     }
 
-    private void saveBalances(Connection c, User user, String uniqueIdString, boolean transactions) throws SQLException {
-        if (transactions)
-            c.setAutoCommit(false);
+    @Override
+    public long deleteLedgerEntries(@NonNull Instant before) throws Exception {
+        long deleted = 0;
+        int count;
 
-        for (Currency currency : this.plugin.getCurrencyManager().getRegisteredCurrencies()) {
-            BigDecimal balance = user.getBalance(currency.getProxy());
+        try (Connection c = this.connectionFactory.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(this.deleteLedgerBefore)) {
+                do {
+                    ps.setLong(1, before.toEpochMilli());
+                    ps.setInt(2, DELETE_LEDGER_CHUNK_SIZE);
+
+                    count = ps.executeUpdate();
+                    deleted += count;
+                } while (count == DELETE_LEDGER_CHUNK_SIZE);
+            }
+        }
 
-            if (balance.compareTo(BigDecimal.ZERO) == 0) {
-                switch (currency.getType()) {
-                    case GLOBAL -> {
-                        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.apply(DELETE_GLOBAL_USER
-                                .replace("{currency}", currency.getIdentifier())))) {
-                            ps.setString(1, uniqueIdString);
+        return deleted;
+    }
 
-                            ps.execute();
-                        }
-                    }
-                    case LOCAL -> {
-                        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.apply(DELETE_LOCAL_USER
-                                .replace("{currency}", currency.getIdentifier())))) {
-                            ps.setString(1, uniqueIdString);
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
 
-                            ps.execute();
-                        }
-                    }
-                }
+    @Override
+    public void saveUser(@NonNull User user) throws Exception {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            try {
+                saveBalances(c, user);
+            } catch (SQLException e) {
+                throw new SQLException("Failed to save user " + user.getUniqueId(), e);
+            }
+        }
+    }
+
+    @Override
+    public void saveUsers(@NotNull @NonNull User... users) throws Exception {
+        if (users.length == 0) return;
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            saveBalances(c, users);
+        }
+    }
+
+    /**
+     * Saves changed balances of all given users in a single transaction.
+     * <p>
+     *     Only currencies marked dirty on the user are written, same for usernames.
+     *     Values come from a snapshot taken before the transaction, they're marked clean only after it commits.
+     *     Writes are grouped per currency table and sent as JDBC batches,
+     *     so the number of round trips depends on the number of currencies, not users.
+     * </p>
+     */
+    private void saveBalances(Connection c, User... users) throws SQLException {
+        dev.xhyrom.lighteco.common.model.user.User[] handles = new dev.xhyrom.lighteco.common.model.user.User[users.length];
+        UUID[] uniqueIds = new UUID[users.length];
+        UserSnapshot[] snapshots = new UserSnapshot[users.length];
+        BitSet currencies = new BitSet();
+        boolean anyUsername = false;
+
+        for (int i = 0; i < users.length; i++) {
+            handles[i] = ApiUser.cast(users[i]);
+            uniqueIds[i] = handles[i].getUniqueId();
+            snapshots[i] = handles[i].snapshot();
+            currencies.or(snapshots[i].currencies());
+            anyUsername |= snapshots[i].usernameChanged();
+        }
 
-                continue;
+        if (currencies.isEmpty() && !anyUsername) return;
+
+        c.setAutoCommit(false);
+
+        try {
+            if (anyUsername)
+                saveUsernames(c, uniqueIds, snapshots);
+
+            if (this.singleTable) {
+                saveBalances(c, currencies, uniqueIds, snapshots);
+            } else {
+                for (int ordinal = currencies.nextSetBit(0); ordinal >= 0; ordinal = currencies.nextSetBit(ordinal + 1)) {
+                    Currency currency = this.plugin.getCurrencyManager().getByOrdinal(ordinal);
+                    if (currency == null)
+                        continue;
+
+                    CurrencyStatements statements = this.statements.get(currency.getIdentifier());
+                    if (statements == null)
+                        continue;
+
+                    saveBalances(c, statements, currency, uniqueIds, snapshots);
+                }
             }
 
-            switch (currency.getType()) {
-                case GLOBAL -> {
-                    try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.apply(SAVE_USER_GLOBAL_CURRENCY
-                            .replace("{currency}", currency.getIdentifier())))) {
-                        ps.setString(1, uniqueIdString);
-                        ps.setBigDecimal(2, balance);
-                        if (SqlStatements.mustDuplicateParameters(this.connectionFactory.getImplementationName()))
-                            ps.setBigDecimal(3, balance);
+            c.commit();
+        } catch (SQLException | RuntimeException e) {
+            // nothing was written, the changes are still dirty
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
 
-                        ps.execute();
-                    }
+        for (int i = 0; i < handles.length; i++) {
+            handles[i].saved(snapshots[i]);
+        }
+    }
+
+    private void saveUsernames(Connection c, UUID[] uniqueIds, UserSnapshot[] snapshots) throws SQLException {
+        try (PreparedStatement clear = c.prepareStatement(this.clearUsername);
+             PreparedStatement save = c.prepareStatement(this.saveUsername)) {
+            for (int i = 0; i < snapshots.length; i++) {
+                String username = snapshots[i].username();
+                if (!snapshots[i].usernameChanged() || username == null)
+                    continue;
+
+                String usernameLower = username.toLowerCase(Locale.ROOT);
+
+                clear.setString(1, usernameLower);
+                this.codec.set(clear, 2, uniqueIds[i]);
+                clear.addBatch();
+
+                this.codec.set(save, 1, uniqueIds[i]);
+                save.setString(2, username);
+                save.setString(3, usernameLower);
+                if (this.duplicateParameters) {
+                    save.setString(4, username);
+                    save.setString(5, usernameLower);
                 }
-                case LOCAL -> {
-                    try (PreparedStatement psLocal = c.prepareStatement(this.statementProcessor.apply(SAVE_USER_LOCAL_CURRENCY
-                            .replace("{currency}", currency.getIdentifier())))) {
-                        psLocal.setString(1, uniqueIdString);
-                        psLocal.setBigDecimal(2, balance);
-                        if (SqlStatements.mustDuplicateParameters(this.connectionFactory.getImplementationName()))
-                            psLocal.setBigDecimal(3, balance);
-
-                        psLocal.execute();
+
+                save.addBatch();
+            }
+
+            clear.executeBatch();
+            save.executeBatch();
+        }
+    }
+
+    /**
+     * Single table layout: all currencies go into one batch of upserts, plus one of deletes.
+     */
+    private void saveBalances(Connection c, BitSet currencies, UUID[] uniqueIds, UserSnapshot[] snapshots) throws SQLException {
+        try (PreparedStatement save = c.prepareStatement(this.saveBalance);
+             PreparedStatement delete = c.prepareStatement(this.deleteBalance)) {
+            boolean anySave = false;
+            boolean anyDelete = false;
+
+            for (int ordinal = currencies.nextSetBit(0); ordinal >= 0; ordinal = currencies.nextSetBit(ordinal + 1)) {
+                Currency currency = this.plugin.getCurrencyManager().getByOrdinal(ordinal);
+                if (currency == null)
+                    continue;
+
+                CurrencyStatements statements = this.statements.get(currency.getIdentifier());
+                if (statements == null)
+                    continue;
+
+                for (int i = 0; i < snapshots.length; i++) {
+                    if (!snapshots[i].currencies().get(ordinal))
+                        continue;
+
+                    BigDecimal balance = currency.fromMinorUnits(snapshots[i].balances()[ordinal]);
+
+                    if (balance.compareTo(BigDecimal.ZERO) == 0) {
+                        this.codec.set(delete, 1, uniqueIds[i]);
+                        delete.setString(2, statements.identifier());
+                        delete.setString(3, statements.context());
+                        delete.addBatch();
+                        anyDelete = true;
+
+                        continue;
                     }
+
+                    this.codec.set(save, 1, uniqueIds[i]);
+                    save.setString(2, statements.identifier());
+                    save.setString(3, statements.context());
+                    save.setBigDecimal(4, balance);
+                    if (this.duplicateParameters)
+                        save.setBigDecimal(5, balance);
+
+                    save.addBatch();
+                    anySave = true;
                 }
             }
+
+            if (anySave)
+                save.executeBatch();
+            if (anyDelete)
+                delete.executeBatch();
         }
+    }
 
-        if (transactions) {
-            try {
-                c.commit();
-            } catch (SQLException e) {
-                c.rollback();
-                throw new SQLException("Failed to save user " + user.getUniqueId(), e);
+    private void saveBalances(Connection c, CurrencyStatements statements, Currency currency, UUID[] uniqueIds, UserSnapshot[] snapshots) throws SQLException {
+        PreparedStatement save = null;
+        PreparedStatement delete = null;
+
+        try {
+            int ordinal = currency.getOrdinal();
+
+            for (int i = 0; i < snapshots.length; i++) {
+                if (!snapshots[i].currencies().get(ordinal))
+                    continue;
+
+                BigDecimal balance = currency.fromMinorUnits(snapshots[i].balances()[ordinal]);
+
+                if (balance.compareTo(BigDecimal.ZERO) == 0) {
+                    if (delete == null)
+                        delete = c.prepareStatement(statements.delete());
+
+                    this.codec.set(delete, 1, uniqueIds[i]);
+                    delete.addBatch();
+
+                    continue;
+                }
+
+                if (save == null)
+                    save = c.prepareStatement(statements.save());
+
+                this.codec.set(save, 1, uniqueIds[i]);
+                save.setBigDecimal(2, balance);
+                if (this.duplicateParameters)
+                    save.setBigDecimal(3, balance);
+
+                save.addBatch();
             }
+
+            if (save != null)
+                save.executeBatch();
+            if (delete != null)
+                delete.executeBatch();
+        } finally {
+            if (save != null)
+                save.close();
+            if (delete != null)
+                delete.close();
         }
     }
+
+    private record CurrencyStatements(String identifier, String context, String save, String delete, String load, String loadMany, String top, String topAfter) {}
+
+    private record LoadQuery(String sql, int parameters) {}
 }
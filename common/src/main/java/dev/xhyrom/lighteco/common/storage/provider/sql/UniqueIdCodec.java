@@ -0,0 +1,122 @@
+package dev.xhyrom.lighteco.common.storage.provider.sql;
+
+import dev.xhyrom.lighteco.common.storage.StorageType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.UUID;
+
+/**
+ * How unique ids are stored in the {@code uuid} columns (and the {@code other} column of the ledger).
+ */
+public enum UniqueIdCodec {
+    /**
+     * {@code VARCHAR(36)}, the canonical string form.
+     */
+    STRING {
+        @Override
+        public void set(PreparedStatement ps, int index, UUID uniqueId) throws SQLException {
+            ps.setString(index, uniqueId.toString());
+        }
+
+        @Override
+        public UUID get(ResultSet rs, String column) throws SQLException {
+            String value = rs.getString(column);
+            return value != null ? UUID.fromString(value) : null;
+        }
+
+        @Override
+        protected int sqlType() {
+            return Types.VARCHAR;
+        }
+    },
+    /**
+     * 16 bytes, most significant bits first, so the order matches the string form.
+     */
+    BINARY {
+        @Override
+        public void set(PreparedStatement ps, int index, UUID uniqueId) throws SQLException {
+            byte[] bytes = new byte[16];
+            LONGS.set(bytes, 0, uniqueId.getMostSignificantBits());
+            LONGS.set(bytes, 8, uniqueId.getLeastSignificantBits());
+
+            ps.setBytes(index, bytes);
+        }
+
+        @Override
+        public UUID get(ResultSet rs, String column) throws SQLException {
+            byte[] bytes = rs.getBytes(column);
+            return bytes != null ? new UUID((long) LONGS.get(bytes, 0), (long) LONGS.get(bytes, 8)) : null;
+        }
+
+        @Override
+        protected int sqlType() {
+            return Types.BINARY;
+        }
+    },
+    /**
+     * PostgreSQL {@code uuid}, the driver sends it as 16 bytes.
+     */
+    NATIVE {
+        @Override
+        public void set(PreparedStatement ps, int index, UUID uniqueId) throws SQLException {
+            ps.setObject(index, uniqueId);
+        }
+
+        @Override
+        public UUID get(ResultSet rs, String column) throws SQLException {
+            return rs.getObject(column, UUID.class);
+        }
+
+        @Override
+        protected int sqlType() {
+            return Types.OTHER;
+        }
+    };
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public abstract void set(PreparedStatement ps, int index, UUID uniqueId) throws SQLException;
+
+    /**
+     * @return the unique id, or null if the column is null
+     */
+    public abstract @Nullable UUID get(ResultSet rs, String column) throws SQLException;
+
+    protected abstract int sqlType();
+
+    /**
+     * Like {@link #set(PreparedStatement, int, UUID)}, binds null for optional columns.
+     */
+    public void setNullable(PreparedStatement ps, int index, @Nullable UUID uniqueId) throws SQLException {
+        if (uniqueId == null) {
+            ps.setNull(index, this.sqlType());
+        } else {
+            this.set(ps, index, uniqueId);
+        }
+    }
+
+    /**
+     * Returns the column type used for unique ids, replaces {@code {uuid}} in table definitions.
+     */
+    public String columnType(StorageType implementationName) {
+        return switch (this) {
+            case STRING -> "VARCHAR(36)";
+            case BINARY -> implementationName == StorageType.SQLITE ? "BLOB" : "BINARY(16)";
+            case NATIVE -> "UUID";
+        };
+    }
+
+    public static UniqueIdCodec of(StorageType implementationName, boolean binary) {
+        if (!binary)
+            return STRING;
+
+        return implementationName == StorageType.POSTGRESQL ? NATIVE : BINARY;
+    }
+}
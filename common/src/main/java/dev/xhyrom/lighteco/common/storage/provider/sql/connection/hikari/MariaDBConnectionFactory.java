@@ -3,6 +3,7 @@ package dev.xhyrom.lighteco.common.storage.provider.sql.connection.hikari;
 import dev.xhyrom.lighteco.common.config.storage.StorageDataConfig;
 import dev.xhyrom.lighteco.common.storage.StorageType;
 
+import java.util.Map;
 import java.util.function.Function;
 
 public class MariaDBConnectionFactory extends DriverBasedHikariConnectionFactory {
@@ -30,6 +31,14 @@ public class MariaDBConnectionFactory extends DriverBasedHikariConnectionFactory
         return "mariadb";
     }
 
+    @Override
+    protected void overrideProperties(Map<String, Object> properties) {
+        super.overrideProperties(properties);
+
+        // Send batches using the bulk protocol instead of one statement per row
+        properties.putIfAbsent("useBulkStmts", "true");
+    }
+
     @Override
     public Function<String, String> getStatementProcessor() {
         return s -> s.replace('\'', '`');
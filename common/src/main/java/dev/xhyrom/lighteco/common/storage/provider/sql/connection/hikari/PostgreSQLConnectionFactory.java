@@ -38,6 +38,9 @@ public class PostgreSQLConnectionFactory extends DriverBasedHikariConnectionFact
         // Doesn't work with PostgreSQL
         properties.remove("useUnicode");
         properties.remove("characterEncoding");
+
+        // Rewrite batched inserts into multi-row statements
+        properties.putIfAbsent("reWriteBatchedInserts", "true");
     }
 
     @Override
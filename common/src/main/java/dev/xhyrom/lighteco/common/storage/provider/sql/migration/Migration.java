@@ -0,0 +1,26 @@
+package dev.xhyrom.lighteco.common.storage.provider.sql.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single step in the schema history of a table.
+ *
+ * @param version the version the table has after this step, starting at 1
+ * @param description what the step does, used for logging
+ * @param heavy whether the step may take long on big tables (index builds),
+ *              such steps are run in the background if the table already has data
+ * @param exclusive whether nothing else may use the table while the step runs (rebuilds),
+ *                  tables with such a step pending are migrated before they're used
+ * @param step the step itself, must be safe to run again if it was interrupted
+ */
+public record Migration(int version, String description, boolean heavy, boolean exclusive, Step step) {
+    public Migration(int version, String description, boolean heavy, Step step) {
+        this(version, description, heavy, false, step);
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection c, String table) throws SQLException;
+    }
+}
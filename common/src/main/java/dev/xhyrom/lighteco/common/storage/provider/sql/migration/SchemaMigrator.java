@@ -0,0 +1,200 @@
+package dev.xhyrom.lighteco.common.storage.provider.sql.migration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import dev.xhyrom.lighteco.common.storage.provider.sql.SqlStatements;
+import dev.xhyrom.lighteco.common.storage.provider.sql.connection.ConnectionFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Brings tables up to date, one {@link Migration} at a time.
+ * <p>
+ *     The version of every table is kept in {@code {prefix}_schema}, so each step runs once.
+ *     Tables without a version row (created before migrations existed) start at 0,
+ *     which is why every step has to be safe to run on a table that already has it applied.
+ * </p>
+ * <p>
+ *     Heavy steps on tables with data don't block startup, they run on a single background thread
+ *     together with every step after them, unless one of those is exclusive.
+ *     Heavy steps are index builds, MySQL, MariaDB and PostgreSQL keep the table writable while they run,
+ *     on SQLite and H2 writes wait for them.
+ * </p>
+ */
+public class SchemaMigrator {
+    private final LightEcoPlugin plugin;
+    private final ConnectionFactory connectionFactory;
+    private final boolean background;
+
+    private final String createSchemaTable;
+    private final String loadVersion;
+    private final String insertVersion;
+    private final String updateVersion;
+    private final String hasRows;
+
+    private ExecutorService executor;
+
+    public SchemaMigrator(LightEcoPlugin plugin, ConnectionFactory connectionFactory, Function<String, String> statementProcessor) {
+        this.plugin = plugin;
+        this.connectionFactory = connectionFactory;
+        this.background = plugin.getConfig().storage.backgroundMigrations;
+
+        this.createSchemaTable = statementProcessor.apply(SqlStatements.CREATE_SCHEMA_TABLE.get(connectionFactory.getImplementationName()));
+        this.loadVersion = statementProcessor.apply(SqlStatements.LOAD_SCHEMA_VERSION.get(connectionFactory.getImplementationName()));
+        this.insertVersion = statementProcessor.apply(SqlStatements.INSERT_SCHEMA_VERSION.get(connectionFactory.getImplementationName()));
+        this.updateVersion = statementProcessor.apply(SqlStatements.UPDATE_SCHEMA_VERSION.get(connectionFactory.getImplementationName()));
+        this.hasRows = statementProcessor.apply(SqlStatements.HAS_ROWS.get(connectionFactory.getImplementationName()));
+    }
+
+    public void init() throws SQLException {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(this.createSchemaTable)) {
+                ps.execute();
+            }
+        }
+    }
+
+    public synchronized void shutdown() throws InterruptedException {
+        if (this.executor == null)
+            return;
+
+        // unfinished steps are picked up again on the next start
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Applies all migrations the table doesn't have yet.
+     *
+     * @param table the final table name, also used as the key in the schema table
+     * @param migrations the migrations, ordered by version
+     */
+    public void migrate(String table, List<Migration> migrations) throws SQLException {
+        this.migrate(table, table, migrations);
+    }
+
+    /**
+     * Applies all migrations not applied under the given name yet.
+     *
+     * @param name the key in the schema table
+     * @param table the final table name passed to the migrations
+     * @param migrations the migrations, ordered by version
+     */
+    public void migrate(String name, String table, List<Migration> migrations) throws SQLException {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            int version = this.loadVersion(c, name);
+
+            for (int i = 0; i < migrations.size(); i++) {
+                Migration migration = migrations.get(i);
+                if (migration.version() <= version)
+                    continue;
+
+                if (migration.heavy() && this.background && !this.hasExclusive(migrations, i) && this.hasRows(c, table)) {
+                    this.migrateInBackground(name, table, migrations.subList(i, migrations.size()));
+                    return;
+                }
+
+                this.apply(c, name, table, migration);
+                version = migration.version();
+            }
+        }
+    }
+
+    /**
+     * @param name the key in the schema table
+     * @return the version the migrations under the given name are at, 0 if none ran yet
+     */
+    public int version(String name) throws SQLException {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            return this.loadVersion(c, name);
+        }
+    }
+
+    private boolean hasExclusive(List<Migration> migrations, int from) {
+        for (int i = from; i < migrations.size(); i++) {
+            if (migrations.get(i).exclusive())
+                return true;
+        }
+
+        return false;
+    }
+
+    private synchronized void migrateInBackground(String name, String table, List<Migration> migrations) {
+        if (this.executor == null) {
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("lighteco-migration")
+                    .setDaemon(true)
+                    .build());
+        }
+
+        this.plugin.getBootstrap().getLogger().info("Table %s will be migrated in the background", table);
+
+        this.executor.execute(() -> {
+            try (Connection c = this.connectionFactory.getConnection()) {
+                for (Migration migration : migrations) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+
+                    this.apply(c, name, table, migration);
+                }
+            } catch (SQLException e) {
+                this.plugin.getBootstrap().getLogger().warn("Failed to migrate table %s, will retry on next start", e, table);
+            }
+        });
+    }
+
+    private void apply(Connection c, String name, String table, Migration migration) throws SQLException {
+        this.plugin.getBootstrap().getLogger().info("Migrating table %s to version %s (%s)", table, migration.version(), migration.description());
+
+        long start = System.currentTimeMillis();
+        migration.step().apply(c, table);
+
+        this.setVersion(c, name, migration.version());
+
+        if (this.plugin.getConfig().debug) {
+            this.plugin.getBootstrap().getLogger().info("Migrated table %s to version %s in %sms", table, migration.version(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Records the version of a table, e.g. to make steps run again after the table was rebuilt.
+     */
+    public void setVersion(Connection c, String name, int version) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.updateVersion)) {
+            ps.setInt(1, version);
+            ps.setString(2, name);
+
+            if (ps.executeUpdate() != 0)
+                return;
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(this.insertVersion)) {
+            ps.setInt(1, version);
+            ps.setString(2, name);
+            ps.execute();
+        }
+    }
+
+    private int loadVersion(Connection c, String name) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.loadVersion)) {
+            ps.setString(1, name);
+
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getInt("version") : 0;
+        }
+    }
+
+    private boolean hasRows(Connection c, String table) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.hasRows.replace("{table}", table))) {
+            return ps.executeQuery().next();
+        }
+    }
+}
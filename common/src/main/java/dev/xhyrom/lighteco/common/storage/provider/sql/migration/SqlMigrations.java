@@ -0,0 +1,424 @@
+package dev.xhyrom.lighteco.common.storage.provider.sql.migration;
+
+import dev.xhyrom.lighteco.common.storage.StorageType;
+import dev.xhyrom.lighteco.common.storage.provider.sql.SqlStatements;
+import dev.xhyrom.lighteco.common.storage.provider.sql.UniqueIdCodec;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Schema history of the tables used by the SQL storage provider.
+ * <p>
+ *     Append new steps to the end of a list, never change or reorder released ones.
+ * </p>
+ */
+public class SqlMigrations {
+    private static final int COPY_PAGE_SIZE = 1000;
+
+    private final StorageType implementationName;
+    private final Function<String, String> statementProcessor;
+    private final UniqueIdCodec codec;
+
+    public SqlMigrations(StorageType implementationName, Function<String, String> statementProcessor, UniqueIdCodec codec) {
+        this.implementationName = implementationName;
+        this.statementProcessor = statementProcessor;
+        this.codec = codec;
+    }
+
+    public List<Migration> users() {
+        return List.of(
+                new Migration(1, "create table", false, this::createUsersTable),
+                new Migration(2, "add username index", true, (c, table) -> this.execute(c, SqlStatements.CREATE_USERS_USERNAME_INDEX, table))
+        );
+    }
+
+    public List<Migration> currency() {
+        return List.of(
+                new Migration(1, "create table", false, this::createCurrencyTable),
+                new Migration(2, "add balance index", true, this::createBalanceIndex),
+                new Migration(3, "widen balance column", false, true, this::widenBalance)
+        );
+    }
+
+    public List<Migration> balances() {
+        return List.of(
+                new Migration(1, "create table", false, this::createBalancesTable),
+                new Migration(2, "add leaderboard index", true, (c, table) -> this.createIndex(c, SqlStatements.CREATE_BALANCES_TOP_INDEX, table, table + "_top"))
+        );
+    }
+
+    public List<Migration> ledger() {
+        return List.of(
+                new Migration(1, "create table", false, this::createLedgerTable),
+                new Migration(2, "add user index", true, (c, table) -> this.createIndex(c, SqlStatements.CREATE_LEDGER_USER_INDEX, table, table + "_user")),
+                new Migration(3, "add time index", true, (c, table) -> this.createIndex(c, SqlStatements.CREATE_LEDGER_TIME_INDEX, table, table + "_created_at")),
+                new Migration(4, "add user currency index", true, (c, table) -> this.createIndex(c, SqlStatements.CREATE_LEDGER_USER_CURRENCY_INDEX, table, table + "_user_currency"))
+        );
+    }
+
+    /**
+     * Copies balances of a currency from the table per currency layout into the balances table.
+     * <p>
+     *     Runs before the currency is used, so nothing can be loaded from the balances table before its rows are there.
+     *     The old table is kept as it is.
+     * </p>
+     *
+     * @param currency the currency identifier
+     * @param context the server, empty for global currencies
+     */
+    public List<Migration> copyToBalances(String currency, String context) {
+        return List.of(
+                new Migration(1, "copy balances of " + currency, false, (c, table) -> {
+                    if (!this.tableExists(c, table))
+                        return;
+
+                    try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.apply(
+                            SqlStatements.COPY_CURRENCY_TABLE_TO_BALANCES.get(this.implementationName).replace("{table}", table)
+                    ))) {
+                        ps.setString(1, currency);
+                        ps.setString(2, context);
+                        ps.setString(3, currency);
+                        ps.setString(4, context);
+                        ps.execute();
+                    }
+                })
+        );
+    }
+
+    /*
+     * Unique id conversion, kept apart from the lists above since it's optional.
+     * The given step runs after a table was rebuilt, see #rebuild.
+     */
+
+    public List<Migration> usersUniqueIds(Migration.Step rebuilt) {
+        return this.uniqueIds(List.of(this::createUsersTable), rebuilt);
+    }
+
+    public List<Migration> currencyUniqueIds(Migration.Step rebuilt) {
+        return this.uniqueIds(List.of(this::createCurrencyTable, this::widenColumn), rebuilt);
+    }
+
+    public List<Migration> balancesUniqueIds(Migration.Step rebuilt) {
+        return this.uniqueIds(List.of(this::createBalancesTable), rebuilt);
+    }
+
+    public List<Migration> ledgerUniqueIds(Migration.Step rebuilt) {
+        return this.uniqueIds(List.of(this::createLedgerTable), this::copyLedgerRows, rebuilt);
+    }
+
+    private List<Migration> uniqueIds(List<Migration.Step> columns, Migration.Step rebuilt) {
+        return this.uniqueIds(columns, (c, from, to) -> this.copyRows(c, from, to, true), rebuilt);
+    }
+
+    private List<Migration> uniqueIds(List<Migration.Step> columns, RowCopy rows, Migration.Step rebuilt) {
+        return List.of(
+                new Migration(1, "store unique ids as " + this.codec.columnType(this.implementationName), false,
+                        (c, table) -> this.rebuild(c, table, "_uuid", "_text", this::storesTextUniqueIds, columns, rows, rebuilt))
+        );
+    }
+
+    /**
+     * Rebuilds a table: copies it into a new table page by page, then swaps the two.
+     * <p>
+     *     Can't run in the background, rows written to the old table during the copy would be lost.
+     *     If interrupted, the next run continues from whatever state the tables were left in.
+     * </p>
+     *
+     * @param copySuffix appended to the table name for the new table
+     * @param previousSuffix appended to the table name for the old table while they're swapped
+     * @param needed whether the table still has to be rebuilt
+     * @param columns creates the new table
+     * @param rebuilt runs after the swap, the new table only has the columns, so its indexes have to be added again
+     */
+    private void rebuild(Connection c, String table, String copySuffix, String previousSuffix, Check needed,
+                         List<Migration.Step> columns, RowCopy rows, Migration.Step rebuilt) throws SQLException {
+        String copy = table + copySuffix;
+        String previous = table + previousSuffix;
+
+        // interrupted between the two renames
+        if (!this.tableExists(c, table) && this.tableExists(c, previous))
+            this.execute(c, SqlStatements.RENAME_TABLE.get(this.implementationName).replace("{to}", table), previous);
+
+        if (!this.tableExists(c, table) || !needed.test(c, table)) {
+            // interrupted after the renames, or nothing to rebuild
+            this.execute(c, SqlStatements.DROP_TABLE, previous);
+            return;
+        }
+
+        this.execute(c, SqlStatements.DROP_TABLE, copy);
+        for (Migration.Step step : columns) {
+            step.apply(c, copy);
+        }
+
+        rows.copy(c, table, copy);
+
+        this.execute(c, SqlStatements.RENAME_TABLE.get(this.implementationName).replace("{to}", previous), table);
+        this.execute(c, SqlStatements.RENAME_TABLE.get(this.implementationName).replace("{to}", table), copy);
+        this.execute(c, SqlStatements.DROP_TABLE, previous);
+
+        rebuilt.apply(c, table);
+    }
+
+    /**
+     * Copies a table keyed by unique id, paged by it.
+     *
+     * @param convert whether the unique ids are strings that have to be stored with the codec, otherwise they're copied as they are
+     */
+    private void copyRows(Connection c, String from, String to, boolean convert) throws SQLException {
+        String first = this.statementProcessor.apply(SqlStatements.LOAD_FIRST_UNIQUE_ID_PAGE.get(this.implementationName).replace("{table}", from));
+        String next = this.statementProcessor.apply(SqlStatements.LOAD_UNIQUE_ID_PAGE.get(this.implementationName).replace("{table}", from));
+        Object last = null;
+        int read;
+
+        c.setAutoCommit(false);
+
+        try {
+            do {
+                read = 0;
+
+                try (PreparedStatement ps = c.prepareStatement(last == null ? first : next)) {
+                    if (last == null) {
+                        ps.setInt(1, COPY_PAGE_SIZE);
+                    } else {
+                        ps.setObject(1, last);
+                        ps.setInt(2, COPY_PAGE_SIZE);
+                    }
+
+                    ResultSet rs = ps.executeQuery();
+                    ResultSetMetaData meta = rs.getMetaData();
+
+                    try (PreparedStatement insert = c.prepareStatement(this.insert(to, meta))) {
+                        while (rs.next()) {
+                            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                                if ("uuid".equalsIgnoreCase(meta.getColumnName(i))) {
+                                    last = rs.getObject(i);
+
+                                    if (convert) {
+                                        this.codec.set(insert, i, UUID.fromString((String) last));
+                                    } else {
+                                        insert.setObject(i, last, meta.getColumnType(i));
+                                    }
+                                } else {
+                                    insert.setObject(i, rs.getObject(i), meta.getColumnType(i));
+                                }
+                            }
+
+                            insert.addBatch();
+                            read++;
+                        }
+
+                        if (read != 0)
+                            insert.executeBatch();
+                    }
+                }
+
+                c.commit();
+            } while (read == COPY_PAGE_SIZE);
+        } catch (SQLException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Ledger rows are paged by id, unique ids repeat there. Both unique id columns are converted.
+     */
+    private void copyLedgerRows(Connection c, String from, String to) throws SQLException {
+        String select = this.statementProcessor.apply(SqlStatements.LOAD_LEDGER_PAGE.get(this.implementationName).replace("{table}", from));
+        String insert = this.statementProcessor.apply(SqlStatements.COPY_LEDGER_ENTRY.get(this.implementationName).replace("{table}", to));
+        long last = Long.MIN_VALUE;
+        int read;
+
+        c.setAutoCommit(false);
+
+        try {
+            do {
+                read = 0;
+
+                try (PreparedStatement ps = c.prepareStatement(select);
+                     PreparedStatement copy = c.prepareStatement(insert)) {
+                    ps.setLong(1, last);
+                    ps.setInt(2, COPY_PAGE_SIZE);
+
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        last = rs.getLong("id");
+                        String other = rs.getString("other");
+
+                        copy.setLong(1, rs.getLong("created_at"));
+                        this.codec.set(copy, 2, UUID.fromString(rs.getString("uuid")));
+                        copy.setString(3, rs.getString("currency"));
+                        copy.setString(4, rs.getString("type"));
+                        copy.setBigDecimal(5, rs.getBigDecimal("amount"));
+                        copy.setBigDecimal(6, rs.getBigDecimal("balance"));
+                        this.codec.setNullable(copy, 7, other != null ? UUID.fromString(other) : null);
+                        copy.setString(8, rs.getString("source"));
+                        copy.addBatch();
+
+                        read++;
+                    }
+
+                    if (read != 0)
+                        copy.executeBatch();
+                }
+
+                c.commit();
+            } while (read == COPY_PAGE_SIZE);
+        } catch (SQLException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
+    }
+
+    private String insert(String table, ResultSetMetaData meta) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (i != 1) {
+                columns.append(", ");
+                values.append(", ");
+            }
+
+            columns.append('\'').append(meta.getColumnName(i)).append('\'');
+            values.append('?');
+        }
+
+        return this.statementProcessor.apply("INSERT INTO '" + table + "' (" + columns + ") VALUES (" + values + ");");
+    }
+
+    private boolean balanceIsNarrow(Connection c, String table) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getColumns(c.getCatalog(), null, table, "balance")) {
+            if (!rs.next())
+                return false;
+
+            int size = rs.getInt("COLUMN_SIZE");
+            // an unconstrained NUMERIC is reported without a precision or with its maximum one, and without a scale
+            if (this.implementationName == StorageType.POSTGRESQL)
+                return size > 0 && size < 30;
+
+            return size < 30 || rs.getInt("DECIMAL_DIGITS") < 10;
+        }
+    }
+
+    private boolean storesTextUniqueIds(Connection c, String table) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getColumns(c.getCatalog(), null, table, "uuid")) {
+            if (!rs.next())
+                return false;
+
+            int type = rs.getInt("DATA_TYPE");
+            return type == Types.VARCHAR || type == Types.CHAR || type == Types.NVARCHAR || type == Types.NCHAR || type == Types.LONGVARCHAR;
+        }
+    }
+
+    private void createUsersTable(Connection c, String table) throws SQLException {
+        this.execute(c, SqlStatements.CREATE_USERS_TABLE, table);
+    }
+
+    private void createCurrencyTable(Connection c, String table) throws SQLException {
+        this.execute(c, SqlStatements.CREATE_CURRENCY_TABLE, table);
+    }
+
+    private void createBalancesTable(Connection c, String table) throws SQLException {
+        this.execute(c, SqlStatements.CREATE_BALANCES_TABLE, table);
+    }
+
+    private void createLedgerTable(Connection c, String table) throws SQLException {
+        this.execute(c, SqlStatements.CREATE_LEDGER_TABLE, table);
+    }
+
+    /**
+     * H2, MySQL and MariaDB copy the whole table for the column change and hold off writes until it's done,
+     * so the table is rebuilt page by page instead, with the column changed while the copy is still empty.
+     */
+    private void widenBalance(Connection c, String table) throws SQLException {
+        // e.g. rebuilt with the unique id conversion, which creates the column wide already
+        if (!this.balanceIsNarrow(c, table))
+            return;
+
+        if (this.implementationName != StorageType.H2
+                && this.implementationName != StorageType.MYSQL
+                && this.implementationName != StorageType.MARIADB) {
+            this.widenColumn(c, table);
+            return;
+        }
+
+        this.rebuild(c, table, "_wide", "_narrow", this::balanceIsNarrow,
+                List.of(this::createCurrencyTable, this::widenColumn),
+                (c1, from, to) -> this.copyRows(c1, from, to, false),
+                this::createBalanceIndex);
+    }
+
+    private void widenColumn(Connection c, String table) throws SQLException {
+        this.execute(c, SqlStatements.WIDEN_BALANCE, table);
+    }
+
+    private void createBalanceIndex(Connection c, String table) throws SQLException {
+        this.createIndex(c, SqlStatements.CREATE_BALANCE_INDEX, table, table + "_balance");
+    }
+
+    private void createIndex(Connection c, SqlStatements statement, String table, String index) throws SQLException {
+        if (SqlStatements.mustCheckIndexExists(this.implementationName) && this.indexExists(c, table, index))
+            return;
+
+        this.execute(c, statement.get(this.implementationName).replace("{index}", index), table);
+    }
+
+    private boolean tableExists(Connection c, String table) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getTables(c.getCatalog(), null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    private boolean indexExists(Connection c, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = c.getMetaData();
+
+        try (ResultSet rs = metaData.getIndexInfo(c.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME")))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void execute(Connection c, SqlStatements statement, String table) throws SQLException {
+        String sql = statement.get(this.implementationName);
+        // nothing to do on this database
+        if (sql == null)
+            return;
+
+        this.execute(c, sql, table);
+    }
+
+    private void execute(Connection c, String sql, String table) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.apply(sql
+                .replace("{table}", table)
+                .replace("{uuid}", this.codec.columnType(this.implementationName))
+        ))) {
+            ps.execute();
+        }
+    }
+
+    private interface RowCopy {
+        void copy(Connection c, String from, String to) throws SQLException;
+    }
+
+    private interface Check {
+        boolean test(Connection c, String table) throws SQLException;
+    }
+}
@@ -0,0 +1,395 @@
+package dev.xhyrom.lighteco.common.task;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.xhyrom.lighteco.common.config.storage.StorageJournalConfig;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.User;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of balance changes between saves.
+ * <p>
+ *     Every change appends the new balance to a memory-mapped file, the file is forced to disk
+ *     every sync interval for all changes at once. Two files are used in turns: a flush of
+ *     {@link UserSaveTask} switches to the other one, and once everything was saved the old one is cleared.
+ * </p>
+ * <p>
+ *     Records hold balances, not deltas, so replaying changes that were already saved is harmless.
+ *     On startup leftovers are handed to {@link PendingSaveFile}, which applies them like unsaved changes.
+ * </p>
+ */
+public class BalanceJournal {
+    static final long MAGIC = 0x4C45434A524E4C01L; // "LECJRNL" + version
+    private static final int HEADER = Long.BYTES * 2;
+
+    // length, generation, most/least significant bits, balance, digits, currency length, crc
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Long.BYTES * 4 + Byte.BYTES + Short.BYTES + Integer.BYTES;
+
+    // records are built here before they're copied into the segment, so appending allocates nothing
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final LightEcoPlugin plugin;
+    private final Path[] paths;
+    private final int capacity;
+
+    private final Segment[] segments = new Segment[2];
+    private volatile int active;
+    private long generation;
+
+    // appends hold the read lock, switching segments the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean full = new AtomicBoolean();
+    // segments are unmapped once closed, guarded by lock
+    private boolean closed;
+    private final ScheduledExecutorService sync;
+
+    public BalanceJournal(LightEcoPlugin plugin, StorageJournalConfig config) {
+        this.plugin = plugin;
+        this.paths = new Path[] {
+                plugin.getBootstrap().getDataDirectory().resolve("journal-0.bin"),
+                plugin.getBootstrap().getDataDirectory().resolve("journal-1.bin")
+        };
+        this.capacity = Math.max(1, config.size) * 1024 * 1024;
+
+        this.sync = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lighteco-journal")
+                .setDaemon(true)
+                .build());
+        this.sync.scheduleWithFixedDelay(this::force, config.syncInterval, config.syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads changes left over from the last run into the pending saves and starts a fresh journal.
+     */
+    public void open(PendingSaveFile pending) throws IOException {
+        Map<UUID, Map<String, BigDecimal>> balances = new LinkedHashMap<>();
+        List<Replay> replays = new ArrayList<>(2);
+
+        for (Path path : this.paths) {
+            if (Files.exists(path))
+                replays.add(read(path));
+        }
+
+        replays.sort(Comparator.comparingLong(Replay::generation));
+        for (Replay replay : replays) {
+            replay.records().forEach(record -> balances
+                    .computeIfAbsent(record.uniqueId(), id -> new LinkedHashMap<>())
+                    .put(record.currency(), record.balance()));
+        }
+
+        if (!balances.isEmpty()) {
+            this.plugin.getBootstrap().getLogger().warn("Found balance changes of %s users in the journal, they will be saved again", balances.size());
+            pending.merge(balances);
+        }
+
+        for (int i = 0; i < this.segments.length; i++) {
+            // a mapping of the file must not outlive it, e.g. after a reload
+            if (this.segments[i] != null)
+                this.segments[i].unmap();
+
+            this.segments[i] = new Segment(this.paths[i], this.capacity);
+        }
+
+        this.closed = false;
+
+        this.segments[0].reset(++this.generation);
+    }
+
+    /**
+     * Appends the current balance of the user, called right after it's marked dirty.
+     */
+    public void append(User user, Currency currency) {
+        byte[] identifier = currency.getEncodedIdentifier();
+        int length = RECORD_OVERHEAD + identifier.length;
+
+        long balance = user.getMinorBalance(currency);
+        while (true) {
+            this.lock.readLock().lock();
+            try {
+                if (this.closed)
+                    return;
+
+                Segment segment = this.segments[this.active];
+                if (!segment.append(user.getUniqueId(), balance, currency, identifier, length)) {
+                    this.full();
+                    return;
+                }
+            } finally {
+                this.lock.readLock().unlock();
+            }
+
+            // a concurrent change may have appended before us, make sure the last record is the latest balance
+            long current = user.getMinorBalance(currency);
+            if (current == balance)
+                return;
+
+            balance = current;
+        }
+    }
+
+    /**
+     * Called at the start of a flush, switches to the other segment if it's free.
+     * <p>
+     *     Everything appended before the switch belongs to users already queued for the flush.
+     *     If the other segment is still in use (the previous flush failed), it stays the one to clear.
+     * </p>
+     */
+    public void beginFlush() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.closed)
+                return;
+
+            int inactive = 1 - this.active;
+            if (!this.segments[inactive].isEmpty())
+                return;
+
+            this.segments[inactive].reset(++this.generation);
+            this.active = inactive;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called after a successful flush, clears the segment it covered.
+     */
+    public void flushed() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.closed)
+                return;
+
+            this.segments[1 - this.active].clear();
+            this.full.set(false);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param saved whether everything was saved, so nothing has to be replayed
+     */
+    public void close(boolean saved) {
+        // a running sync must not touch the segments once they're unmapped
+        this.sync.shutdownNow();
+        try {
+            this.sync.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+            for (Segment segment : this.segments) {
+                if (segment == null)
+                    continue;
+
+                if (saved)
+                    segment.clear();
+
+                segment.force();
+                segment.unmap();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void force() {
+        this.lock.readLock().lock();
+        try {
+            if (this.closed)
+                return;
+
+            for (Segment segment : this.segments) {
+                segment.force();
+            }
+        } catch (RuntimeException e) {
+            this.plugin.getBootstrap().getLogger().error("Failed to sync the journal", e);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void full() {
+        if (!this.full.compareAndSet(false, true))
+            return;
+
+        this.plugin.getBootstrap().getLogger().warn("Balance journal is full, saving users now. Consider increasing storage.journal.size");
+        this.plugin.getBootstrap().getScheduler().async().execute(this.plugin.getUserSaveTask());
+    }
+
+    /**
+     * Reads the records of a journal file, up to the first one that is torn, corrupt or of another generation.
+     */
+    static Replay read(Path path) throws IOException {
+        List<Record> records = new ArrayList<>();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER || buffer.getLong(0) != MAGIC)
+            return new Replay(0, records);
+
+        long generation = buffer.getLong(Long.BYTES);
+        int position = HEADER;
+
+        while (position + Integer.BYTES <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD || position + length > buffer.limit())
+                break;
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(position, length - Integer.BYTES));
+            if ((int) crc.getValue() != buffer.getInt(position + length - Integer.BYTES))
+                break;
+
+            ByteBuffer record = buffer.slice(position + Integer.BYTES, length - Integer.BYTES * 2);
+            if (record.getLong() != generation)
+                break;
+
+            UUID uniqueId = new UUID(record.getLong(), record.getLong());
+            long balance = record.getLong();
+            int digits = record.get();
+            byte[] identifier = new byte[record.getShort()];
+            record.get(identifier);
+
+            records.add(new Record(uniqueId, new String(identifier, StandardCharsets.UTF_8), BigDecimal.valueOf(balance, digits)));
+            position += length;
+        }
+
+        return new Replay(generation, records);
+    }
+
+    record Replay(long generation, List<Record> records) {}
+
+    record Record(UUID uniqueId, String currency, BigDecimal balance) {}
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger position = new AtomicInteger(HEADER);
+        private volatile long generation;
+        private volatile boolean written;
+
+        private Segment(Path path, int capacity) throws IOException {
+            Files.deleteIfExists(path);
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        private boolean isEmpty() {
+            return this.position.get() == HEADER;
+        }
+
+        private void reset(long generation) {
+            this.generation = generation;
+            this.position.set(HEADER);
+            this.buffer.putLong(0, MAGIC);
+            this.buffer.putLong(Long.BYTES, generation);
+            this.written = true;
+        }
+
+        private void clear() {
+            // records of another generation are never replayed, no need to erase them
+            this.reset(0);
+        }
+
+        private boolean append(UUID uniqueId, long balance, Currency currency, byte[] identifier, int length) {
+            int position;
+            do {
+                position = this.position.get();
+                if (position + length > this.buffer.capacity())
+                    return false;
+            } while (!this.position.compareAndSet(position, position + length));
+
+            Scratch scratch = SCRATCH.get();
+            ByteBuffer record = scratch.buffer(length);
+            record.putInt(length);
+            record.putLong(this.generation);
+            record.putLong(uniqueId.getMostSignificantBits());
+            record.putLong(uniqueId.getLeastSignificantBits());
+            record.putLong(balance);
+            record.put((byte) currency.fractionalDigits());
+            record.putShort((short) identifier.length);
+            record.put(identifier);
+
+            CRC32 crc = scratch.crc;
+            crc.reset();
+            crc.update(record.array(), 0, length - Integer.BYTES);
+            record.putInt((int) crc.getValue());
+
+            // the length goes last, a record with a length is complete
+            this.buffer.put(position + Integer.BYTES, record.array(), Integer.BYTES, length - Integer.BYTES);
+            this.buffer.putInt(position, length);
+
+            this.written = true;
+            return true;
+        }
+
+        private void force() {
+            if (!this.written)
+                return;
+
+            this.written = false;
+            this.buffer.force();
+        }
+
+        /**
+         * Releases the mapping right away instead of whenever the buffer is collected.
+         * The segment must not be used afterwards.
+         */
+        private void unmap() {
+            try {
+                Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+
+                Object unsafe = field.get(null);
+                unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, this.buffer);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // not available, it's unmapped once collected
+            }
+        }
+    }
+
+    private static final class Scratch {
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + 64);
+
+        private ByteBuffer buffer(int length) {
+            if (this.buffer.capacity() < length)
+                this.buffer = ByteBuffer.allocate(length);
+
+            return this.buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package dev.xhyrom.lighteco.common.task;
+
+import dev.xhyrom.lighteco.common.manager.ledger.LedgerManager;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import dev.xhyrom.lighteco.common.model.user.User;
+import dev.xhyrom.lighteco.common.model.user.UserSnapshot;
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes of users that couldn't be saved, kept on disk so they survive a restart.
+ * <p>
+ *     Written while storage keeps failing, read back on startup.
+ *     Balances are applied once their currency is registered again,
+ *     after that they are saved like any other change.
+ * </p>
+ */
+public class PendingSaveFile {
+    private static final int VERSION = 1;
+
+    // stamp of changes that were not applied to a loaded user yet
+    private static final long NOT_APPLIED = Long.MAX_VALUE;
+
+    private final LightEcoPlugin plugin;
+    private final Path path;
+
+    // unique id -> pending changes, guarded by this
+    private final Map<UUID, Pending> pending = new LinkedHashMap<>();
+
+    // stamped on changes once they are applied and queued, see checkpoint(), guarded by this
+    private long generation;
+
+    public PendingSaveFile(LightEcoPlugin plugin) {
+        this.plugin = plugin;
+        this.path = plugin.getBootstrap().getDataDirectory().resolve("pending-saves.bin");
+    }
+
+    public synchronized void load() {
+        if (!Files.exists(this.path))
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.path)))) {
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unknown version " + version);
+
+            int users = in.readInt();
+            for (int i = 0; i < users; i++) {
+                UUID uniqueId = new UUID(in.readLong(), in.readLong());
+                String username = in.readBoolean() ? in.readUTF() : null;
+
+                Pending entry = this.pending.computeIfAbsent(uniqueId, id -> new Pending());
+                entry.username = username;
+
+                int balances = in.readInt();
+                for (int j = 0; j < balances; j++) {
+                    entry.put(in.readUTF(), new BigDecimal(in.readUTF()), NOT_APPLIED);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.pending.clear();
+
+            // keep it for manual recovery, the next write would replace it
+            Path broken = this.path.resolveSibling(this.path.getFileName() + ".broken");
+            try {
+                Files.move(this.path, broken, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ignored) {
+            }
+
+            this.plugin.getBootstrap().getLogger().error("Failed to read unsaved changes from the last run, they were moved to %s", e, broken);
+            return;
+        }
+
+        // usernames are only restored together with a balance, the next join saves them anyway
+        this.pending.values().removeIf(entry -> entry.balances.isEmpty());
+        if (this.pending.isEmpty())
+            return;
+
+        this.plugin.getBootstrap().getLogger().warn("Found unsaved changes of %s users from the last run, they will be saved again", this.pending.size());
+    }
+
+    /**
+     * Writes the current changes of the users, replacing what was written for them before.
+     */
+    public synchronized void spill(Collection<User> users) {
+        for (User user : users) {
+            UserSnapshot snapshot = user.snapshot();
+            if (snapshot.isEmpty())
+                continue;
+
+            // the user is queued, so these are saved like any other change
+            Pending entry = this.pending.computeIfAbsent(user.getUniqueId(), id -> new Pending());
+            if (snapshot.usernameChanged()) {
+                entry.username = snapshot.username();
+                entry.usernameApplied = this.generation;
+            }
+
+            for (int ordinal = snapshot.currencies().nextSetBit(0); ordinal >= 0; ordinal = snapshot.currencies().nextSetBit(ordinal + 1)) {
+                Currency currency = this.plugin.getCurrencyManager().getByOrdinal(ordinal);
+                if (currency != null)
+                    entry.put(currency.getIdentifier(), currency.fromMinorUnits(snapshot.balances()[ordinal]), this.generation);
+            }
+        }
+
+        this.write();
+    }
+
+    /**
+     * Adds balances recovered from elsewhere (e.g. the journal), they are restored like spilled ones.
+     *
+     * @param balances unique id -> currency identifier -> balance
+     */
+    public synchronized void merge(Map<UUID, Map<String, BigDecimal>> balances) {
+        balances.forEach((uniqueId, currencies) -> {
+            Pending entry = this.pending.computeIfAbsent(uniqueId, id -> new Pending());
+            currencies.forEach((identifier, balance) -> entry.put(identifier, balance, NOT_APPLIED));
+        });
+
+        this.write();
+    }
+
+    /**
+     * Starts a flush, changes applied before it are saved by it.
+     *
+     * @return the checkpoint to pass to {@link #saved(long)} once the flush succeeded
+     */
+    public synchronized long checkpoint() {
+        return ++this.generation;
+    }
+
+    /**
+     * Forgets changes that were applied and queued before the checkpoint, called once its flush saved everything.
+     * Changes that were not restored (yet), e.g. of currencies that are not registered, are kept.
+     */
+    public synchronized void saved(long checkpoint) {
+        boolean changed = false;
+
+        Iterator<Pending> iterator = this.pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending entry = iterator.next();
+
+            if (entry.usernameApplied < checkpoint) {
+                entry.username = null;
+                entry.usernameApplied = NOT_APPLIED;
+                changed = true;
+            }
+
+            if (entry.applied.values().removeIf(applied -> applied < checkpoint)) {
+                entry.balances.keySet().retainAll(entry.applied.keySet());
+                changed = true;
+            }
+
+            if (entry.username == null && entry.balances.isEmpty())
+                iterator.remove();
+        }
+
+        if (changed)
+            this.write();
+    }
+
+    /**
+     * Applies pending balances of a newly registered currency to their users.
+     * <p>
+     *     Users that are loaded already get them right away. The others are loaded,
+     *     which applies them in {@link #loaded(User)}. They stay in the file until the users are saved,
+     *     if loading them fails it's tried again later.
+     * </p>
+     */
+    public void restore(Currency currency) {
+        this.restore(currency, 0);
+    }
+
+    private void restore(Currency currency, int failures) {
+        Map<UUID, BigDecimal> balances = new HashMap<>();
+        Map<UUID, String> usernames = new HashMap<>();
+
+        synchronized (this) {
+            for (Map.Entry<UUID, Pending> entry : this.pending.entrySet()) {
+                Pending pending = entry.getValue();
+                BigDecimal balance = pending.balances.get(currency.getIdentifier());
+                if (balance == null || pending.applied.get(currency.getIdentifier()) != NOT_APPLIED)
+                    continue;
+
+                balances.put(entry.getKey(), balance);
+                if (pending.username != null && pending.usernameApplied == NOT_APPLIED)
+                    usernames.put(entry.getKey(), pending.username);
+            }
+        }
+
+        if (balances.isEmpty())
+            return;
+
+        List<UUID> unloaded = new ArrayList<>();
+        try (LedgerManager.Scope scope = this.plugin.getLedgerManager().scope(null, "restore")) {
+            for (Map.Entry<UUID, BigDecimal> entry : balances.entrySet()) {
+                UUID uniqueId = entry.getKey();
+
+                // loaded before the currency was registered, so nothing could change its balance in it yet
+                User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+                if (user != null && !this.plugin.getStorage().isLoading(uniqueId)) {
+                    this.apply(user, currency, entry.getValue(), usernames.get(uniqueId));
+                } else {
+                    unloaded.add(uniqueId);
+                }
+            }
+        }
+
+        if (unloaded.isEmpty())
+            return;
+
+        // applied by loaded() before anyone else sees the users, so a retry can't overwrite their later changes
+        this.plugin.getUserManager().loadUsers(unloaded)
+                .exceptionally(throwable -> {
+                    long delay = this.plugin.getConfig().storage.retry.delay(failures + 1);
+                    this.plugin.getBootstrap().getLogger().error("Failed to restore unsaved %s balances, they are kept in %s and restored again in %sms", throwable, currency.getIdentifier(), this.path, delay);
+
+                    this.plugin.getBootstrap().getScheduler().asyncLater(() -> this.restore(currency, failures + 1), delay, TimeUnit.MILLISECONDS);
+                    return null;
+                });
+    }
+
+    /**
+     * Applies pending balances of registered currencies to a user storage just returned.
+     * <p>
+     *     Called while the load is still registered, so nobody else can see or change the user yet.
+     * </p>
+     */
+    public void loaded(User user) {
+        Map<Currency, BigDecimal> balances = new HashMap<>();
+        String username;
+
+        synchronized (this) {
+            Pending entry = this.pending.get(user.getUniqueId());
+            if (entry == null)
+                return;
+
+            entry.balances.forEach((identifier, balance) -> {
+                Currency currency = this.plugin.getCurrencyManager().getIfLoaded(identifier);
+                if (currency != null && entry.applied.get(identifier) == NOT_APPLIED)
+                    balances.put(currency, balance);
+            });
+
+            username = entry.usernameApplied == NOT_APPLIED ? entry.username : null;
+        }
+
+        try (LedgerManager.Scope scope = this.plugin.getLedgerManager().scope(null, "restore")) {
+            for (Map.Entry<Currency, BigDecimal> entry : balances.entrySet()) {
+                this.apply(user, entry.getKey(), entry.getValue(), username);
+            }
+        }
+    }
+
+    /**
+     * Replaces the balance storage returned, unless it changed since.
+     * A balance that changed is kept in the file rather than overwriting the newer one.
+     */
+    private void apply(User user, Currency currency, BigDecimal balance, @Nullable String username) {
+        long stored = user.getMinorBalance(currency);
+
+        // queues the user, so it's applied before the next checkpoint
+        if (!user.compareAndSetMinorBalance(currency, stored, currency.toMinorUnits(balance))) {
+            this.plugin.getBootstrap().getLogger().warn("The %s balance of %s changed while restoring it, the unsaved balance %s is kept in %s", currency.getIdentifier(), user.getUniqueId(), balance.toPlainString(), this.path);
+            return;
+        }
+
+        if (username != null)
+            user.setUsername(username);
+
+        this.applied(user.getUniqueId(), currency, balance, username);
+    }
+
+    private synchronized void applied(UUID uniqueId, Currency currency, BigDecimal balance, @Nullable String username) {
+        Pending entry = this.pending.get(uniqueId);
+        if (entry == null)
+            return;
+
+        // replaced meanwhile (e.g. merged from the journal), the newer one still has to be applied
+        if (entry.balances.get(currency.getIdentifier()) == balance)
+            entry.applied.put(currency.getIdentifier(), this.generation);
+
+        if (username != null && username.equals(entry.username))
+            entry.usernameApplied = this.generation;
+    }
+
+    /**
+     * @return a copy of the pending balances, unique id -> currency identifier -> balance
+     */
+    synchronized Map<UUID, Map<String, BigDecimal>> balances() {
+        Map<UUID, Map<String, BigDecimal>> balances = new LinkedHashMap<>();
+        this.pending.forEach((uniqueId, entry) -> balances.put(uniqueId, new LinkedHashMap<>(entry.balances)));
+
+        return balances;
+    }
+
+    private void write() {
+        try {
+            if (this.pending.isEmpty()) {
+                Files.deleteIfExists(this.path);
+                return;
+            }
+
+            Path temporary = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(VERSION);
+                out.writeInt(this.pending.size());
+
+                for (Map.Entry<UUID, Pending> entry : this.pending.entrySet()) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+
+                    String username = entry.getValue().username;
+                    out.writeBoolean(username != null);
+                    if (username != null)
+                        out.writeUTF(username);
+
+                    out.writeInt(entry.getValue().balances.size());
+                    for (Map.Entry<String, BigDecimal> balance : entry.getValue().balances.entrySet()) {
+                        out.writeUTF(balance.getKey());
+                        out.writeUTF(balance.getValue().toPlainString());
+                    }
+                }
+            }
+
+            Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.plugin.getBootstrap().getLogger().error("Failed to write unsaved changes to %s", e, this.path);
+        }
+    }
+
+    private static final class Pending {
+        private @Nullable String username;
+        private long usernameApplied = NOT_APPLIED;
+        private final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        // currency identifier -> generation it was applied in
+        private final Map<String, Long> applied = new HashMap<>();
+
+        private void put(String identifier, BigDecimal balance, long applied) {
+            this.balances.put(identifier, balance);
+            this.applied.put(identifier, applied);
+        }
+    }
+}
@@ -1,42 +1,225 @@
 package dev.xhyrom.lighteco.common.task;
 
+import dev.xhyrom.lighteco.common.config.storage.StorageJournalConfig;
+import dev.xhyrom.lighteco.common.config.storage.StorageRetryConfig;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
 import dev.xhyrom.lighteco.common.model.user.User;
 import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import lombok.Getter;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Write-behind queue of users with unsaved changes.
+ * <p>
+ *     Users enqueue themselves when they become dirty, further changes before the save don't enqueue them again.
+ *     The queue is drained every save interval, or as soon as it reaches the batch size,
+ *     so the cost of a save depends on how many users changed, not on how many are loaded.
+ * </p>
+ * <p>
+ *     Users of a failed save are queued again and the next flush waits, twice as long after every failure in a row
+ *     (with some jitter, so servers sharing a database don't retry at the same time).
+ *     While storage is failing, changes are also written to {@link PendingSaveFile} so they survive a restart.
+ * </p>
+ */
 public class UserSaveTask implements Runnable {
     private final LightEcoPlugin plugin;
 
+    private final Queue<User> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    @Getter
+    private final PendingSaveFile pendingSaveFile;
+    private final @Nullable BalanceJournal journal;
+
+    // failed flushes in a row and when to retry (System.nanoTime), guarded by this
+    private int failures;
+    private long retryAt;
+
     public UserSaveTask(LightEcoPlugin plugin) {
         this.plugin = plugin;
+        this.pendingSaveFile = new PendingSaveFile(plugin);
+
+        StorageJournalConfig journal = plugin.getConfig().storage.journal;
+        this.journal = journal.enabled ? new BalanceJournal(plugin, journal) : null;
+    }
+
+    /**
+     * Reads what couldn't be saved in the last run, see {@link PendingSaveFile} and {@link BalanceJournal}.
+     */
+    public void load() {
+        this.pendingSaveFile.load();
+
+        if (this.journal != null) {
+            try {
+                this.journal.open(this.pendingSaveFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open the balance journal", e);
+            }
+        }
+    }
+
+    /**
+     * Called by {@link User} after a balance change, right after it was queued.
+     */
+    public void journal(User user, Currency currency) {
+        if (this.journal != null)
+            this.journal.append(user, currency);
+    }
+
+    /**
+     * Called by {@link User} the first time it's marked dirty since it was last taken from the queue.
+     */
+    public void enqueue(User user) {
+        this.queue.add(user);
+
+        if (this.size.incrementAndGet() >= this.plugin.getConfig().saveBatchSize && this.flushScheduled.compareAndSet(false, true)) {
+            this.plugin.getBootstrap().getScheduler().async().execute(this);
+        }
+    }
+
+    public int size() {
+        return this.size.get();
     }
 
     @Override
     public void run() {
-        User[] users = this.plugin.getUserManager().values().stream()
-                .filter(User::isDirty)
-                .toArray(User[]::new);
+        this.flushScheduled.set(false);
 
-        if (this.plugin.getConfig().debug)
-            this.plugin.getBootstrap().getLogger().info("Saving %s users in task", users.length);
+        // only one flush at a time, the other one would just find an empty queue
+        synchronized (this) {
+            if (this.failures > 0 && System.nanoTime() - this.retryAt < 0)
+                return;
 
-        if (users.length == 0) {
-            return;
+            this.flush();
         }
+    }
 
-        try {
-            for (User user : users) {
-                user.setDirty(false);
+    /**
+     * Saves everything right away, ignoring the retry delay, called on shutdown.
+     * If storage still fails, the changes are written to {@link PendingSaveFile}.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            boolean saved = this.flush() && this.size.get() == 0;
+            if (!saved && this.size.get() > 0) {
+                this.plugin.getBootstrap().getLogger().error("Storage is failing, writing unsaved changes of %s users to a file", this.size.get());
+                this.pendingSaveFile.spill(new ArrayList<>(this.queue));
             }
 
+            if (this.journal != null)
+                this.journal.close(saved);
+        }
+    }
+
+    /**
+     * @return true if everything was saved
+     */
+    private boolean flush() {
+        // everything journaled so far belongs to users that are queued by now
+        if (this.journal != null)
+            this.journal.beginFlush();
+
+        // restored changes queued before this are saved by it
+        long checkpoint = this.pendingSaveFile.checkpoint();
+
+        // users changing during the flush are queued again, leave them for the next one
+        int remaining = this.size.get();
+        int batchSize = Math.max(1, this.plugin.getConfig().saveBatchSize);
+        int saved = 0;
+
+        while (remaining > 0) {
+            List<User> batch = this.poll(Math.min(remaining, batchSize));
+            if (batch.isEmpty())
+                break;
+
+            remaining -= batch.size();
+
+            if (!this.save(batch)) {
+                this.failed();
+                return false;
+            }
+
+            saved += batch.size();
+        }
+
+        if (this.plugin.getConfig().debug)
+            this.plugin.getBootstrap().getLogger().info("Saving %s users in task", saved);
+
+        if (this.failures > 0) {
+            this.plugin.getBootstrap().getLogger().info("Saving users works again after %s failed attempts", this.failures);
+            this.failures = 0;
+        }
+
+        if (this.journal != null)
+            this.journal.flushed();
+
+        this.pendingSaveFile.saved(checkpoint);
+
+        return true;
+    }
+
+    private void failed() {
+        this.failures++;
+
+        StorageRetryConfig config = this.plugin.getConfig().storage.retry;
+        long delay = config.delay(this.failures);
+
+        // up to a quarter less, so servers sharing a database spread out
+        delay -= ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        this.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+
+        this.plugin.getBootstrap().getLogger().warn("%s users are waiting to be saved, retrying in %sms", this.size.get(), delay);
+
+        if (this.size.get() >= config.spillThreshold)
+            this.pendingSaveFile.spill(new ArrayList<>(this.queue));
+    }
+
+    private List<User> poll(int max) {
+        List<User> batch = new ArrayList<>(max);
+
+        User user;
+        while (batch.size() < max && (user = this.queue.poll()) != null) {
+            this.size.decrementAndGet();
+
+            // from now on a change queues the user again, even if it happens during the save
+            user.dequeued();
+            if (user.isDirty())
+                batch.add(user);
+        }
+
+        return batch;
+    }
+
+    private boolean save(List<User> users) {
+        try {
+            // storage snapshots each user and marks it clean only once the snapshot is committed
             this.plugin.getStorage().saveUsersSync(
-                    Arrays.stream(users)
+                    users.stream()
                             .map(User::getProxy)
                             .toArray(dev.xhyrom.lighteco.api.model.user.User[]::new)
             );
         } catch (RuntimeException e) {
             this.plugin.getBootstrap().getLogger().error("Failed to save users", e);
+
+            // the changes are still dirty, queue them for the retry
+            for (User user : users) {
+                user.saveFailed();
+            }
+
+            return false;
         }
+
+        return true;
     }
 }
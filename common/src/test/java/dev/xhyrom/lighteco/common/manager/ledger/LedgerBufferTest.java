@@ -0,0 +1,101 @@
+package dev.xhyrom.lighteco.common.manager.ledger;
+
+import dev.xhyrom.lighteco.api.model.ledger.LedgerEntry;
+import dev.xhyrom.lighteco.common.model.currency.Currency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LedgerBufferTest {
+    private static final UUID USER = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+
+    private Currency currency;
+
+    @BeforeEach
+    void setUp() {
+        dev.xhyrom.lighteco.api.model.currency.Currency proxy = mock(dev.xhyrom.lighteco.api.model.currency.Currency.class);
+        when(proxy.getIdentifier()).thenReturn("money");
+        when(proxy.fractionalDigits()).thenReturn(2);
+        when(proxy.getDefaultBalance()).thenReturn(BigDecimal.ZERO);
+
+        this.currency = new Currency(proxy);
+    }
+
+    @Test
+    void drainsInOfferOrderAcrossWraparound() {
+        LedgerBuffer buffer = new LedgerBuffer(4);
+        List<LedgerEntry> entries = new ArrayList<>();
+        long next = 0;
+
+        // every round starts at a different slot
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(this.offer(buffer, next++));
+            }
+
+            entries.clear();
+            assertEquals(3, buffer.drain(entries, Integer.MAX_VALUE));
+            assertEquals(0, buffer.size());
+
+            for (int i = 0; i < 3; i++) {
+                LedgerEntry entry = entries.get(i);
+                long amount = next - 3 + i;
+
+                assertEquals(BigDecimal.valueOf(amount, 2), entry.amount());
+                assertEquals(BigDecimal.valueOf(amount * 10, 2), entry.balance());
+                assertEquals(amount, entry.time().toEpochMilli());
+                assertEquals(USER, entry.uniqueId());
+                assertEquals("money", entry.currency());
+                assertNull(entry.other());
+            }
+        }
+    }
+
+    @Test
+    void rejectsChangesWhileFull() {
+        LedgerBuffer buffer = new LedgerBuffer(4);
+
+        for (long i = 0; i < 4; i++) {
+            assertTrue(this.offer(buffer, i));
+        }
+
+        assertFalse(this.offer(buffer, 4));
+        assertEquals(4, buffer.size());
+
+        List<LedgerEntry> entries = new ArrayList<>();
+        assertEquals(1, buffer.drain(entries, 1));
+
+        // the drained slot is free again, nothing offered before was overwritten
+        assertTrue(this.offer(buffer, 5));
+        assertFalse(this.offer(buffer, 6));
+
+        assertEquals(4, buffer.drain(entries, Integer.MAX_VALUE));
+        assertEquals(List.of(0L, 1L, 2L, 3L, 5L), entries.stream().map(entry -> entry.time().toEpochMilli()).toList());
+    }
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        LedgerBuffer buffer = new LedgerBuffer(5);
+
+        for (long i = 0; i < 8; i++) {
+            assertTrue(this.offer(buffer, i));
+        }
+
+        assertFalse(this.offer(buffer, 8));
+    }
+
+    private boolean offer(LedgerBuffer buffer, long value) {
+        return buffer.offer(value, USER, this.currency, LedgerEntry.Type.DEPOSIT, value, value * 10, null, null);
+    }
+}
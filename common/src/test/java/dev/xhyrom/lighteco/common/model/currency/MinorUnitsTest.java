@@ -0,0 +1,33 @@
+package dev.xhyrom.lighteco.common.model.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MinorUnitsTest {
+    @Test
+    void addsUpToTheLimits() {
+        assertEquals(Long.MAX_VALUE, MinorUnits.add(Long.MAX_VALUE - 1, 1));
+        assertEquals(Long.MIN_VALUE, MinorUnits.add(Long.MIN_VALUE + 1, -1));
+        // operands of different signs can't overflow
+        assertEquals(-1, MinorUnits.add(Long.MAX_VALUE, Long.MIN_VALUE));
+    }
+
+    @Test
+    void rejectsOverflow() {
+        assertThrows(IllegalArgumentException.class, () -> MinorUnits.add(Long.MAX_VALUE, 1));
+        assertThrows(IllegalArgumentException.class, () -> MinorUnits.add(Long.MIN_VALUE, -1));
+        assertThrows(IllegalArgumentException.class, () -> MinorUnits.add(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> MinorUnits.add(Long.MIN_VALUE, Long.MIN_VALUE));
+    }
+
+    @Test
+    void convertsAmountsTowardsZero() {
+        assertEquals(123, MinorUnits.of(new BigDecimal("1.239"), 2));
+        assertEquals(-123, MinorUnits.of(new BigDecimal("-1.239"), 2));
+        assertThrows(IllegalArgumentException.class, () -> MinorUnits.of(new BigDecimal("1e30"), 2));
+    }
+}
@@ -0,0 +1,80 @@
+package dev.xhyrom.lighteco.common.model.leaderboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RankingTreeTest {
+    @Test
+    void ordersByBalanceThenUniqueId() {
+        UUID low = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID high = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+        RankingTree tree = new RankingTree();
+        tree.put(high, "high", 100);
+        tree.put(low, "low", 100);
+        tree.put(UUID.randomUUID(), "top", 200);
+
+        assertEquals(2, tree.rank(low));
+        assertEquals(3, tree.rank(high));
+        assertEquals(low, tree.get(1).uniqueId);
+        assertEquals(0, tree.rank(UUID.randomUUID()));
+        assertNull(tree.get(3));
+    }
+
+    @Test
+    void staysConsistentAfterPutsAndRemovals() {
+        Random random = new Random(42);
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            users.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        RankingTree tree = new RankingTree();
+        Map<UUID, Long> balances = new HashMap<>();
+
+        for (int step = 0; step < 5_000; step++) {
+            UUID user = users.get(random.nextInt(users.size()));
+
+            if (random.nextInt(4) == 0) {
+                tree.remove(user);
+                balances.remove(user);
+            } else {
+                // few distinct balances, so ties are common
+                long balance = random.nextInt(50);
+                tree.put(user, null, balance);
+                balances.put(user, balance);
+            }
+
+            if (step % 250 == 0)
+                assertMatches(balances, tree);
+        }
+
+        assertMatches(balances, tree);
+    }
+
+    private static void assertMatches(Map<UUID, Long> balances, RankingTree tree) {
+        List<UUID> expected = new ArrayList<>(balances.keySet());
+        expected.sort(Comparator.<UUID>comparingLong(balances::get).reversed().thenComparing(Comparator.naturalOrder()));
+
+        assertEquals(expected.size(), tree.size());
+        for (int i = 0; i < expected.size(); i++) {
+            UUID user = expected.get(i);
+
+            assertEquals(user, tree.get(i).uniqueId);
+            assertEquals(balances.get(user), tree.get(i).balance);
+            assertEquals(i + 1, tree.rank(user));
+        }
+
+        assertNull(tree.get(expected.size()));
+    }
+}
@@ -0,0 +1,127 @@
+package dev.xhyrom.lighteco.common.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceJournalTest {
+    private static final UUID FIRST = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+    private static final UUID SECOND = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsRecordsUntilUnusedSpace() throws IOException {
+        Path path = this.write(7,
+                record(7, FIRST, 12345, 2, "money"),
+                record(7, SECOND, -5, 0, "pen\u00edze"),
+                new byte[64]
+        );
+
+        BalanceJournal.Replay replay = BalanceJournal.read(path);
+
+        assertEquals(7, replay.generation());
+        assertEquals(List.of(
+                new BalanceJournal.Record(FIRST, "money", new BigDecimal("123.45")),
+                new BalanceJournal.Record(SECOND, "pen\u00edze", new BigDecimal("-5"))
+        ), replay.records());
+    }
+
+    @Test
+    void stopsAtTornRecord() throws IOException {
+        byte[] torn = record(7, SECOND, 100, 2, "money");
+
+        Path path = this.write(7,
+                record(7, FIRST, 100, 2, "money"),
+                Arrays.copyOf(torn, torn.length / 2)
+        );
+
+        assertEquals(List.of(new BalanceJournal.Record(FIRST, "money", new BigDecimal("1.00"))), BalanceJournal.read(path).records());
+    }
+
+    @Test
+    void stopsAtRecordWithBadChecksum() throws IOException {
+        byte[] corrupt = record(7, SECOND, 100, 2, "money");
+        // a bit of the balance
+        corrupt[Integer.BYTES + Long.BYTES * 3] ^= 1;
+
+        Path path = this.write(7,
+                record(7, FIRST, 100, 2, "money"),
+                corrupt,
+                record(7, FIRST, 200, 2, "money")
+        );
+
+        assertEquals(List.of(new BalanceJournal.Record(FIRST, "money", new BigDecimal("1.00"))), BalanceJournal.read(path).records());
+    }
+
+    @Test
+    void stopsAtRecordOfAnotherGeneration() throws IOException {
+        // left over from before the segment was reused, intact but stale
+        Path path = this.write(7,
+                record(7, FIRST, 100, 2, "money"),
+                record(6, SECOND, 100, 2, "money"),
+                record(7, FIRST, 200, 2, "money")
+        );
+
+        assertEquals(List.of(new BalanceJournal.Record(FIRST, "money", new BigDecimal("1.00"))), BalanceJournal.read(path).records());
+    }
+
+    @Test
+    void ignoresFileWithoutHeader() throws IOException {
+        Path path = this.directory.resolve("journal.bin");
+        Files.write(path, record(7, FIRST, 100, 2, "money"));
+
+        BalanceJournal.Replay replay = BalanceJournal.read(path);
+
+        assertEquals(0, replay.generation());
+        assertTrue(replay.records().isEmpty());
+    }
+
+    private Path write(long generation, byte[]... records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ByteBuffer.allocate(Long.BYTES * 2).putLong(BalanceJournal.MAGIC).putLong(generation).array());
+        for (byte[] record : records) {
+            out.write(record);
+        }
+
+        Path path = this.directory.resolve("journal.bin");
+        Files.write(path, out.toByteArray());
+
+        return path;
+    }
+
+    private static byte[] record(long generation, UUID uniqueId, long balance, int digits, String currency) {
+        byte[] identifier = currency.getBytes(StandardCharsets.UTF_8);
+        int length = Integer.BYTES + Long.BYTES * 4 + Byte.BYTES + Short.BYTES + identifier.length + Integer.BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length)
+                .putInt(length)
+                .putLong(generation)
+                .putLong(uniqueId.getMostSignificantBits())
+                .putLong(uniqueId.getLeastSignificantBits())
+                .putLong(balance)
+                .put((byte) digits)
+                .putShort((short) identifier.length)
+                .put(identifier);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length - Integer.BYTES);
+
+        return buffer.putInt((int) crc.getValue()).array();
+    }
+}
@@ -0,0 +1,70 @@
+package dev.xhyrom.lighteco.common.task;
+
+import dev.xhyrom.lighteco.common.plugin.LightEcoPlugin;
+import dev.xhyrom.lighteco.common.plugin.bootstrap.LightEcoBootstrap;
+import dev.xhyrom.lighteco.common.plugin.logger.PluginLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PendingSaveFileTest {
+    @TempDir
+    Path directory;
+
+    private LightEcoPlugin plugin;
+
+    @BeforeEach
+    void setUp() {
+        LightEcoBootstrap bootstrap = mock(LightEcoBootstrap.class);
+        when(bootstrap.getDataDirectory()).thenReturn(this.directory);
+        when(bootstrap.getLogger()).thenReturn(mock(PluginLogger.class));
+
+        this.plugin = mock(LightEcoPlugin.class);
+        when(this.plugin.getBootstrap()).thenReturn(bootstrap);
+    }
+
+    @Test
+    void roundTripsBalances() {
+        Map<String, BigDecimal> first = new LinkedHashMap<>();
+        first.put("money", new BigDecimal("1.50"));
+        first.put("pen\u00edze", new BigDecimal("123456789012345.6789"));
+
+        Map<UUID, Map<String, BigDecimal>> balances = new LinkedHashMap<>();
+        balances.put(UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7"), first);
+        balances.put(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), Map.of("gems", new BigDecimal("-3")));
+
+        new PendingSaveFile(this.plugin).merge(balances);
+
+        PendingSaveFile read = new PendingSaveFile(this.plugin);
+        read.load();
+
+        assertEquals(balances, read.balances());
+    }
+
+    @Test
+    void keepsUnreadableFileForRecovery() throws IOException {
+        Path path = this.directory.resolve("pending-saves.bin");
+        Files.write(path, new byte[] { 0, 0, 0, 1, 0, 0, 0, 5 });
+
+        PendingSaveFile file = new PendingSaveFile(this.plugin);
+        file.load();
+
+        assertTrue(file.balances().isEmpty());
+        assertFalse(Files.exists(path));
+        assertTrue(Files.exists(this.directory.resolve("pending-saves.bin.broken")));
+    }
+}
@@ -47,7 +47,8 @@ public class BukkitMCLoader extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        this.vaultFactory.unhook();
+        if (this.vaultFactory != null)
+            this.vaultFactory.unhook();
     }
 }
 
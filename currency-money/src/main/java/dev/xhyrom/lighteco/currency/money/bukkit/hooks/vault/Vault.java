@@ -1,5 +1,7 @@
 package dev.xhyrom.lighteco.currency.money.bukkit.hooks.vault;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import dev.xhyrom.lighteco.api.LightEco;
 import dev.xhyrom.lighteco.api.LightEcoProvider;
 import dev.xhyrom.lighteco.api.model.currency.Currency;
@@ -8,16 +10,29 @@ import dev.xhyrom.lighteco.currency.money.common.Plugin;
 import net.milkbowl.vault.economy.AbstractEconomy;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Vault extends AbstractEconomy {
     private final Plugin plugin;
     private final LightEco provider;
     private final Currency currency;
+    private final VaultMetrics metrics = new VaultMetrics();
+
+    // lowercase names no user was found for, so plugins asking for them again don't wait for storage every time
+    private final Cache<String, Boolean> unknownNames = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
 
     public Vault(Plugin plugin) {
         this.plugin = plugin;
@@ -25,6 +40,10 @@ public class Vault extends AbstractEconomy {
         this.currency = this.provider.getCurrencyManager().getCurrency("money");
     }
 
+    public VaultMetrics getMetrics() {
+        return this.metrics;
+    }
+
     @Override
     public boolean isEnabled() {
         return true;
@@ -70,9 +89,23 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public boolean hasAccount(String playerName, String worldName) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        assert uniqueId != null;
+        UUID uniqueId = resolve(playerName, deadline());
+        if (uniqueId == null) return false;
+
+        return hasAccount(uniqueId);
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return hasAccount(player.getUniqueId());
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return hasAccount(player.getUniqueId());
+    }
 
+    private boolean hasAccount(UUID uniqueId) {
         return provider.getUserManager().isLoaded(uniqueId);
     }
 
@@ -83,8 +116,21 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public double getBalance(String playerName, String world) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        User user = provider.getUserManager().loadUser(uniqueId).join();
+        return getBalance(getUser(playerName));
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        return getBalance(getUser(player.getUniqueId()));
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return getBalance(getUser(player.getUniqueId()));
+    }
+
+    private double getBalance(User user) {
+        if (user == null) return 0;
 
         return bigDecimalToDouble(user.getBalance(currency));
     }
@@ -96,8 +142,21 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public boolean has(String playerName, String worldName, double amount) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        User user = provider.getUserManager().loadUser(uniqueId).join();
+        return has(getUser(playerName), amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        return has(getUser(player.getUniqueId()), amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return has(getUser(player.getUniqueId()), amount);
+    }
+
+    private boolean has(User user, double amount) {
+        if (user == null) return false;
 
         return user.getBalance(currency).compareTo(BigDecimal.valueOf(amount)) >= 0;
     }
@@ -109,11 +168,32 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        User user = provider.getUserManager().loadUser(uniqueId).join();
+        return withdraw(getUser(playerName), amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        return withdraw(getUser(player.getUniqueId()), amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return withdraw(getUser(player.getUniqueId()), amount);
+    }
+
+    private EconomyResponse withdraw(User user, double amount) {
+        if (user == null) return notLoaded(amount);
 
         try {
-            user.withdraw(currency, BigDecimal.valueOf(amount));
+            // has() may have passed for several withdrawals at once, only the ones that fit succeed
+            if (!user.tryWithdraw(currency, BigDecimal.valueOf(amount))) {
+                return new EconomyResponse(
+                        amount,
+                        bigDecimalToDouble(user.getBalance(currency)),
+                        EconomyResponse.ResponseType.FAILURE,
+                        "Insufficient funds"
+                );
+            }
         } catch (IllegalArgumentException e) {
             return new EconomyResponse(
                     amount,
@@ -121,6 +201,8 @@ public class Vault extends AbstractEconomy {
                     EconomyResponse.ResponseType.FAILURE,
                     "Cannot withdraw negative funds"
             );
+        } catch (IllegalStateException e) {
+            return busy(user, amount);
         }
 
         return new EconomyResponse(
@@ -138,8 +220,21 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        User user = provider.getUserManager().loadUser(uniqueId).join();
+        return deposit(getUser(playerName), amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        return deposit(getUser(player.getUniqueId()), amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return deposit(getUser(player.getUniqueId()), amount);
+    }
+
+    private EconomyResponse deposit(User user, double amount) {
+        if (user == null) return notLoaded(amount);
 
         try {
             user.deposit(currency, BigDecimal.valueOf(amount));
@@ -150,6 +245,8 @@ public class Vault extends AbstractEconomy {
                     EconomyResponse.ResponseType.FAILURE,
                     "Cannot deposit negative funds"
             );
+        } catch (IllegalStateException e) {
+            return busy(user, amount);
         }
 
         return new EconomyResponse(
@@ -212,12 +309,137 @@ public class Vault extends AbstractEconomy {
 
     @Override
     public boolean createPlayerAccount(String playerName, String worldName) {
-        UUID uniqueId = Bukkit.getPlayerUniqueId(playerName);
-        provider.getUserManager().loadUser(uniqueId).join();
+        UUID uniqueId = resolve(playerName, deadline());
+        if (uniqueId == null) return false;
+
+        return createPlayerAccount(uniqueId);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        return createPlayerAccount(player.getUniqueId());
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return createPlayerAccount(player.getUniqueId());
+    }
+
+    private boolean createPlayerAccount(UUID uniqueId) {
+        // accounts are created on first load, no need to wait for it
+        provider.getUserManager().loadUser(uniqueId);
 
         return true;
     }
 
+    /**
+     * Resolves a player name and loads the user, both within the same time bound.
+     */
+    private User getUser(String playerName) {
+        long deadline = deadline();
+
+        return getUser(resolve(playerName, deadline), deadline);
+    }
+
+    /**
+     * Resolves a player name to a unique id.
+     * <p>
+     *     Names of loaded users are resolved from memory, then the names saved by LightEco are looked up,
+     *     unless that recently found nothing. Names LightEco has never seen fall back to the server's profile cache,
+     *     which doesn't ask Mojang.
+     * </p>
+     */
+    private UUID resolve(String playerName, long deadline) {
+        if (playerName == null) return null;
+
+        UUID uniqueId = provider.getUserManager().getUniqueId(playerName);
+        if (uniqueId != null) return uniqueId;
+
+        String key = playerName.toLowerCase(Locale.ROOT);
+        if (this.unknownNames.getIfPresent(key) == null) {
+            CompletableFuture<UUID> lookup = provider.getUserManager().lookupUniqueId(playerName);
+            // remembered even if we stop waiting, the lookup keeps running
+            lookup.thenAccept(found -> {
+                if (found == null) this.unknownNames.put(key, Boolean.TRUE);
+            });
+
+            uniqueId = await(lookup, deadline);
+            if (uniqueId != null) return uniqueId;
+        }
+
+        OfflinePlayer player = Bukkit.getOfflinePlayerIfCached(playerName);
+        return player != null ? player.getUniqueId() : null;
+    }
+
+    private User getUser(UUID uniqueId) {
+        return getUser(uniqueId, deadline());
+    }
+
+    private User getUser(UUID uniqueId, long deadline) {
+        if (uniqueId == null) return null;
+
+        User user = provider.getUserManager().getUser(uniqueId);
+        if (user != null) {
+            this.metrics.hit();
+            return user;
+        }
+
+        this.metrics.miss();
+
+        // the load keeps running if we give up, so the next call is likely a hit
+        return await(provider.getUserManager().loadUser(uniqueId), deadline);
+    }
+
+    /**
+     * @return until when (in {@link System#nanoTime()}) the caller may wait for storage
+     */
+    private long deadline() {
+        long timeout = Bukkit.isPrimaryThread()
+                ? this.plugin.getConfig().vaultMainThreadTimeout
+                : this.plugin.getConfig().vaultAsyncTimeout;
+
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    private <T> T await(CompletableFuture<T> future, long deadline) {
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            return future.join();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return future.get(Math.max(0, deadline - start), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            this.metrics.timeout();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            this.metrics.blocked(System.nanoTime() - start);
+        }
+    }
+
+    private EconomyResponse notLoaded(double amount) {
+        return new EconomyResponse(
+                amount,
+                0,
+                EconomyResponse.ResponseType.FAILURE,
+                "Account is not available right now, try again"
+        );
+    }
+
+    private EconomyResponse busy(User user, double amount) {
+        return new EconomyResponse(
+                amount,
+                bigDecimalToDouble(user.getBalance(currency)),
+                EconomyResponse.ResponseType.FAILURE,
+                "Account is busy, try again"
+        );
+    }
+
     private double bigDecimalToDouble(final BigDecimal value) {
         double amount = value.doubleValue();
 
@@ -5,10 +5,14 @@ import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.ServicesManager;
+import org.bukkit.scheduler.BukkitTask;
 
 public class VaultFactory {
+    private static final long TICKS_PER_MINUTE = 20 * 60;
+
     private final BukkitMCLoader loader;
     private Vault vault;
+    private BukkitTask metricsTask;
 
     public VaultFactory(BukkitMCLoader loader) {
         this.loader = loader;
@@ -20,12 +24,36 @@ public class VaultFactory {
 
         ServicesManager manager = Bukkit.getServicesManager();
         manager.register(Economy.class, vault, this.loader, ServicePriority.Highest);
+
+        long interval = this.loader.getPlugin().getConfig().vaultMetricsInterval * TICKS_PER_MINUTE;
+        if (interval > 0 && this.metricsTask == null)
+            this.metricsTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.loader, this::logMetrics, interval, interval);
     }
 
     public void unhook() {
         if (this.vault == null) return;
 
+        if (this.metricsTask != null) {
+            this.metricsTask.cancel();
+            this.metricsTask = null;
+        }
+
         ServicesManager manager = Bukkit.getServicesManager();
         manager.unregister(Economy.class, vault);
+
+        this.logMetrics();
+    }
+
+    private void logMetrics() {
+        VaultMetrics metrics = this.vault.getMetrics();
+
+        this.loader.getSLF4JLogger().info(
+                "Vault: {} users served from memory, {} not loaded, waited for the database {} times ({} ms in total), {} timed out",
+                metrics.getHits(),
+                metrics.getMisses(),
+                metrics.getBlocked(),
+                metrics.getBlockedMillis(),
+                metrics.getTimeouts()
+        );
     }
 }
@@ -0,0 +1,79 @@
+package dev.xhyrom.lighteco.currency.money.bukkit.hooks.vault;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often the Vault bridge could serve a user from memory
+ * and how often (and how long) it had to wait for storage.
+ */
+public class VaultMetrics {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    void hit() {
+        this.hits.increment();
+    }
+
+    void miss() {
+        this.misses.increment();
+    }
+
+    void blocked(long nanos) {
+        this.blocked.increment();
+        this.blockedNanos.add(nanos);
+    }
+
+    void timeout() {
+        this.timeouts.increment();
+    }
+
+    /**
+     * @return number of lookups served from loaded users
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of lookups of users that were not loaded
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return number of times the caller waited for storage
+     */
+    public long getBlocked() {
+        return this.blocked.sum();
+    }
+
+    /**
+     * @return total time callers spent waiting for storage, in milliseconds
+     */
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.blockedNanos.sum());
+    }
+
+    /**
+     * @return number of waits that ran out of time
+     */
+    public long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "VaultMetrics{" +
+                "hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", blocked=" + getBlocked() +
+                ", blockedMillis=" + getBlockedMillis() +
+                ", timeouts=" + getTimeouts() +
+                '}';
+    }
+}
@@ -19,4 +19,17 @@ public class Config extends OkaeriConfig {
     @Comment("Fractional digits")
     @Comment("How many digits after the decimal point")
     public int fractionalDigits = 2;
+
+    @Comment("Vault")
+    @Comment("Players that are not loaded yet are loaded from the database on demand.")
+    @Comment("How long to wait for that on the main thread, in milliseconds, including looking up the player name.")
+    @Comment("If it takes longer, the operation fails and the player is loaded in the background.")
+    public long vaultMainThreadTimeout = 50;
+
+    @Comment("Same as above, for calls made outside of the main thread.")
+    public long vaultAsyncTimeout = 5000;
+
+    @Comment("How often to log how many Vault calls had to wait for the database, in minutes.")
+    @Comment("They're also logged on shutdown. Set to 0 to only log them on shutdown.")
+    public long vaultMetricsInterval = 30;
 }
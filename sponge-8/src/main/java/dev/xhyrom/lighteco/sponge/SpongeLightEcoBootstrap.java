@@ -54,6 +54,11 @@ public class SpongeLightEcoBootstrap implements LightEcoBootstrap, LoaderBootstr
         return null;
     }
 
+    @Override
+    public boolean isPrimaryThread() {
+        return false;
+    }
+
     @Override
     public Path getDataDirectory() {
         return null;